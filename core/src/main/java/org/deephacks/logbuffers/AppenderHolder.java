@@ -2,53 +2,174 @@ package org.deephacks.logbuffers;
 
 import net.openhft.chronicle.ChronicleConfig;
 import net.openhft.chronicle.ExcerptAppender;
+import net.openhft.chronicle.ExcerptTailer;
 import net.openhft.chronicle.IndexedChronicle;
+import org.deephacks.vals.DirectBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class AppenderHolder {
   private static final Logger logger = LoggerFactory.getLogger(AppenderHolder.class);
   private final RollingRanges ranges;
   private final File basePath;
-  private IndexedChronicle chronicle;
+  /** how long before the end of an interval the next interval may be opened */
+  private static final long MAX_PREPARE_AHEAD_MS = TimeUnit.SECONDS.toMillis(10);
+  /** number of bytes allocated up front in new index and data files opened in advance */
+  private static final int PREFAULT_BYTES = 4 * 1024 * 1024;
+  private static final int PAGE_SIZE = 4096;
+  private Interval current;
   public ExcerptAppender appender;
   private long stopIndex = -1;
+  /** how long after a roll the previous interval is closed */
+  private long closeDelayMs;
+  /** time from which the next interval is opened in advance */
+  private long prepareTime = Long.MAX_VALUE;
+  /** next interval, opened in the background */
+  private Future<Interval> next;
+  /** opens upcoming intervals and closes previous ones */
+  private final ScheduledThreadPoolExecutor roller;
+  /** false if the roller is shared with other appenders and shut down by its owner */
+  private final boolean ownsRoller;
+  /** previous intervals waiting to be closed */
+  private final Queue<Interval> closing = new ConcurrentLinkedQueue<>();
   private final ChronicleConfig config;
+  private final int stripe;
+  private final int stripes;
+  /** first index of the stripe relative to the start of an interval */
+  private final long stripeOffset;
+  /** reusable views over mapped excerpts and source memory, only touched by the writer */
+  final DirectBuffer target = new DirectBuffer(0, 0);
+  final DirectBuffer source = new DirectBuffer(0, 0);
+  /** record type and key hash of the log being appended, only touched by the writer */
+  int type = 0;
+  int keyHash = 0;
+  /** codec used to compress content of appended logs */
+  final Codec codec;
+  /** hash table reused between compressions, only touched by the writer */
+  final int[] lzTable;
+  /** heap memory used for content that must be serialized before it is compressed */
+  private final DirectBuffer scratch = new DirectBuffer(new byte[0]);
+  /** index of the last log that was completely appended */
+  private volatile long lastIndex = -1;
+  /** index of the last log that have been forced to disk */
+  private volatile long durableIndex = -1;
+  /** true if each log is forced to disk by the chronicle when appended */
+  private final boolean synchronous;
+  /** number of appended logs that trigger a force request, 0 if disabled */
+  private int forceEvery = 0;
+  private int appendedSinceForce = 0;
+  private Runnable forceRequest;
+  /** guards chronicle paths that are forced to disk outside of the writer lock */
+  private final Object syncLock = new Object();
+  private String chroniclePath;
+  /** paths of rolled chronicles that have not been forced to disk yet */
+  private final List<String> unsynced = new ArrayList<>();
+  private boolean trackUnsynced = false;
+  /** last timestamp assigned by the writer */
+  private long lastMicros = 0;
+  /** intervals written by the buffer, null if not kept */
+  private Manifest manifest;
 
   AppenderHolder(File path, Optional<RollingRanges> ranges, long time, ChronicleConfig config) {
+    this(path, ranges, time, config, 0, 1);
+  }
+
+  /**
+   * @param stripe  stripe written by this appender.
+   * @param stripes total number of stripes, 1 if not striped.
+   */
+  AppenderHolder(File path, Optional<RollingRanges> ranges, long time, ChronicleConfig config, int stripe, int stripes) {
+    this(path, ranges, time, config, stripe, stripes, Codec.NONE);
+  }
+
+  /**
+   * @param codec codec used to compress content of appended logs.
+   */
+  AppenderHolder(File path, Optional<RollingRanges> ranges, long time, ChronicleConfig config, int stripe, int stripes, Codec codec) {
+    this(path, ranges, time, config, stripe, stripes, codec, null);
+  }
+
+  /**
+   * @param roller executor shared with other appenders that open and close intervals,
+   *               or null to use an executor owned by this appender.
+   */
+  AppenderHolder(File path, Optional<RollingRanges> ranges, long time, ChronicleConfig config, int stripe, int stripes,
+                 Codec codec, ScheduledThreadPoolExecutor roller) {
     this.config = config;
+    this.codec = codec;
+    this.synchronous = config.synchronousMode();
+    this.lzTable = codec == Codec.LZ ? Lz.newTable() : null;
     this.ranges = ranges.orElse(RollingRanges.hourly());
+    this.stripe = stripe;
+    this.stripes = stripes;
+    this.stripeOffset = StripedDir.stripeOffset(this.ranges, stripe, stripes);
     this.basePath = path;
     basePath.mkdirs();
-    this.stopIndex = this.ranges.stopIndexForTime(time);
-    long startIndex = this.ranges.startIndexForTime(time);
-    String intervalDir = this.ranges.startTimeFormatForIndex(startIndex);
-    File basePathDir = new File(basePath, intervalDir);
-    basePathDir.mkdirs();
+    this.ownsRoller = roller == null;
+    this.roller = ownsRoller ? newRoller(1) : roller;
     try {
-      this.chronicle = new IndexedChronicle(basePathDir.getAbsolutePath() + "/" + intervalDir);
-      this.appender = chronicle.createAppender();
+      activate(open(this.ranges.startIndexForTime(time), false));
+      // never assign timestamps before those already written by a previous appender
+      this.lastMicros = lastTimeMicros(current);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * @param threads number of intervals that can be opened or closed in parallel.
+   * @return executor that open and close intervals in the background.
+   */
+  static ScheduledThreadPoolExecutor newRoller(int threads) {
+    AtomicInteger count = new AtomicInteger();
+    ScheduledThreadPoolExecutor roller = new ScheduledThreadPoolExecutor(threads, r -> {
+      int n = count.getAndIncrement();
+      Thread thread = new Thread(r, n == 0 ? "logbuffer-roller" : "logbuffer-roller-" + n);
+      thread.setDaemon(true);
+      return thread;
+    });
+    // closing is delayed and done by close() instead
+    roller.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    return roller;
+  }
+
+  /**
+   * @return scratch memory that can hold at least length bytes, only to be used by the writer.
+   */
+  DirectBuffer scratch(int length) {
+    if (scratch.byteArray().length < length) {
+      scratch.wrap(new byte[Math.max(length, scratch.byteArray().length * 2)]);
+    }
+    return scratch;
+  }
+
   ExcerptAppender getAppender(long time){
     try {
+      if (time >= prepareTime && next == null) {
+        // open the next interval in the background before the writer need it
+        long nextStartIndex = stopIndex + 1;
+        this.next = roller.submit(() -> open(nextStartIndex, true));
+      }
       long startIndex = ranges.startIndexForTime(time);
       if (this.stopIndex < startIndex) {
-        this.appender.close();
-        this.chronicle.close();
-        this.stopIndex = ranges.nextStartIndexForIndex(startIndex) - 1;
-        String intervalDir = ranges.startTimeFormatForIndex(startIndex);
-        File basePathDir = new File(basePath, intervalDir + "/" + intervalDir);
-        logger.debug("appender {}", basePathDir);
-        this.chronicle = new IndexedChronicle(basePathDir.toString(), config);
-        this.appender = chronicle.createAppender();
+        roll(startIndex);
       }
       return appender;
     } catch (IOException e) {
@@ -56,17 +177,341 @@ class AppenderHolder {
     }
   }
 
+  private void roll(long startIndex) throws IOException {
+    Interval opened = null;
+    if (next != null) {
+      Interval prepared = await(next);
+      if (prepared != null && prepared.startIndex == startIndex) {
+        opened = prepared;
+      } else if (prepared != null) {
+        // intervals were skipped without writes
+        closeLater(prepared);
+      }
+      next = null;
+    }
+    if (opened == null) {
+      opened = open(startIndex, false);
+    }
+    Interval previous = current;
+    long previousLastIndex = lastIndex;
+    activate(opened);
+    closed(previous, previousLastIndex);
+    closeLater(previous);
+  }
+
+  /**
+   * Unmapping may take a while, keep it off the write path and away from the
+   * interval boundary where writers are busy with the new interval.
+   */
+  private void closeLater(Interval interval) {
+    closing.add(interval);
+    roller.schedule(this::closePrevious, closeDelayMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void closePrevious() {
+    Interval interval;
+    while ((interval = closing.poll()) != null) {
+      interval.close();
+    }
+  }
+
+  private Interval open(long startIndex, boolean prefault) throws IOException {
+    String intervalDir = ranges.startTimeFormatForIndex(startIndex);
+    File basePathDir = new File(basePath, intervalDir);
+    basePathDir.mkdirs();
+    String name = stripes == 1 ? intervalDir : StripedDir.chronicleName(intervalDir, stripe, stripes);
+    String path = new File(basePathDir, name).getAbsolutePath();
+    logger.debug("appender {}", path);
+    IndexedChronicle chronicle = new IndexedChronicle(path, config);
+    // creating the appender map the first index and data blocks
+    ExcerptAppender appender = chronicle.createAppender();
+    boolean newChronicle = appender.index() == 0;
+    if (prefault) {
+      prefault(path, appender);
+    }
+    return new Interval(startIndex, intervalDir, path, chronicle, appender, TimeIndex.Writer.open(path, newChronicle));
+  }
+
+  /**
+   * @return timestamp of the last log written to an interval, 0 if the interval is empty.
+   */
+  private static long lastTimeMicros(Interval interval) throws IOException {
+    ExcerptTailer tailer = interval.chronicle.createTailer();
+    try {
+      for (long index = interval.appender.index() - 1; index >= 0; index--) {
+        if (tailer.index(index)) {
+          return tailer.readLong(0) * 1000 + tailer.readShort(Log.MICROS_OFFSET);
+        }
+        // skip padded entries
+      }
+      return 0;
+    } finally {
+      tailer.close();
+    }
+  }
+
+  /**
+   * Write zeros to the first pages of new index and data files so that page
+   * allocation happen now rather than on the first writes. Unwritten chronicle
+   * memory is zero so this does not change the content of the files.
+   */
+  private void prefault(String path, ExcerptAppender appender) throws IOException {
+    if (appender.index() != 0) {
+      // not a new chronicle
+      return;
+    }
+    prefault(path + ".index", Math.min(PREFAULT_BYTES, config.indexBlockSize()));
+    prefault(path + ".data", Math.min(PREFAULT_BYTES, config.dataBlockSize()));
+  }
+
+  private static void prefault(String file, long length) throws IOException {
+    ByteBuffer zeros = ByteBuffer.allocate(PAGE_SIZE * 16);
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE)) {
+      for (long position = 0; position < length; position += zeros.capacity()) {
+        zeros.clear();
+        channel.write(zeros, position);
+      }
+    }
+  }
+
+  private void activate(Interval interval) {
+    this.current = interval;
+    this.appender = interval.appender;
+    this.stopIndex = ranges.nextStartIndexForIndex(interval.startIndex) - 1;
+    long startTime = ranges.startTimeForIndex(interval.startIndex);
+    long length = ranges.stopTimeForIndex(interval.startIndex) - startTime + 1;
+    this.closeDelayMs = Math.min(length / 4, MAX_PREPARE_AHEAD_MS);
+    this.prepareTime = startTime + length - closeDelayMs;
+    synchronized (syncLock) {
+      if (trackUnsynced && chroniclePath != null) {
+        unsynced.add(chroniclePath);
+      }
+      this.chroniclePath = interval.path;
+    }
+    opened(interval);
+  }
+
+  /**
+   * Record the current interval and every interval opened from now on in a manifest.
+   */
+  void manifest(Manifest manifest) {
+    this.manifest = manifest;
+    opened(current);
+  }
+
+  private void opened(Interval interval) {
+    if (manifest != null) {
+      Range timeRange = ranges.toTimeRange(Range.closed(interval.startIndex, interval.startIndex));
+      manifest.opened(interval.name, stripes, interval.startIndex, timeRange.start(), timeRange.stop());
+    }
+  }
+
+  /**
+   * @param lastIndex last index written by this holder, may be in an earlier interval.
+   */
+  private void closed(Interval interval, long lastIndex) {
+    if (manifest != null && interval != null) {
+      Range timeRange = ranges.toTimeRange(Range.closed(interval.startIndex, interval.startIndex));
+      if (ranges.startIndexForIndex(lastIndex) != interval.startIndex) {
+        // nothing written to the interval by this holder
+        lastIndex = -1;
+      }
+      manifest.closed(interval.name, stripes, interval.startIndex, lastIndex, timeRange.start(), timeRange.stop());
+    }
+  }
+
+  RollingRanges getRanges() {
+    return ranges;
+  }
+
+  private static Interval await(Future<Interval> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      logger.warn("Could not open next interval in advance", e.getCause());
+      return null;
+    }
+  }
+
   public void close() throws IOException {
-    if (chronicle != null) {
-      appender.close();
-      chronicle.close();
+    if (next != null) {
+      Interval prepared = await(next);
+      if (prepared != null) {
+        prepared.close();
+      }
+      next = null;
+    }
+    if (ownsRoller) {
+      roller.shutdown();
+      try {
+        roller.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    closePrevious();
+    if (current != null) {
+      closed(current, lastIndex);
+      current.close();
     }
   }
 
   public long getAppenderIndex(long time) {
     ExcerptAppender appender = getAppender(time);
-    long index = ranges.startIndexForTime(time);
+    long index = ranges.startIndexForTime(time) + stripeOffset;
     return appender.index() + index;
   }
 
+  /**
+   * Assign the timestamp of the next log. Must be called by the writer, holding
+   * the writer lock, in order to never give out a timestamp that is less than
+   * the previous one.
+   *
+   * @return microseconds since epoch.
+   */
+  long nextTimeMicros(Clock clock) {
+    long micros = peekTimeMicros(clock);
+    this.lastMicros = micros;
+    return micros;
+  }
+
+  /**
+   * Timestamp that the next log would get, without assigning it. Must be called
+   * holding the writer lock.
+   *
+   * @return microseconds since epoch.
+   */
+  long peekTimeMicros(Clock clock) {
+    return Math.max(lastMicros, clock.currentTimeMicros());
+  }
+
+  /**
+   * Set record type and key hash of logs appended until reset to zero.
+   */
+  void meta(int type, int keyHash) {
+    this.type = type;
+    this.keyHash = keyHash;
+  }
+
+  /**
+   * Called by the writer when a log have been completely appended.
+   *
+   * @param micros timestamp of the log.
+   */
+  void appended(long index, long micros) {
+    this.lastIndex = index;
+    if (current.timeIndex != null) {
+      current.timeIndex.appended(index, micros / 1000);
+    }
+    if (synchronous) {
+      this.durableIndex = index;
+    } else if (forceEvery > 0 && ++appendedSinceForce >= forceEvery) {
+      appendedSinceForce = 0;
+      forceRequest.run();
+    }
+  }
+
+  /**
+   * Enable forcing by a durability policy. Must be called before anything is written.
+   *
+   * @param durability   policy that decide when logs are forced.
+   * @param forceRequest called by the writer when a number of logs have been appended.
+   */
+  void durability(Durability durability, Runnable forceRequest) {
+    if (durability.mode == Durability.Mode.RECORDS) {
+      this.forceEvery = durability.records;
+      this.forceRequest = forceRequest;
+    }
+    synchronized (syncLock) {
+      // remember every rolled chronicle since they will be forced
+      trackUnsynced = durability.isPeriodic();
+    }
+  }
+
+  /**
+   * @return index of the last log that have been forced to disk, or -1 if nothing
+   * have been forced by this holder.
+   */
+  long getDurableIndex() {
+    return durableIndex;
+  }
+
+  /**
+   * @return index of the last log that was completely appended, or -1 if nothing
+   * have been written by this holder.
+   */
+  long getLastIndex() {
+    return lastIndex;
+  }
+
+  /**
+   * Force everything written so far to disk, including chronicles that have been
+   * rolled since the last force. Safe to call from a thread other than the writer.
+   */
+  void force() throws IOException {
+    long index = lastIndex;
+    List<String> paths;
+    synchronized (syncLock) {
+      if (index <= durableIndex && unsynced.isEmpty() && trackUnsynced) {
+        // nothing written since the last force
+        return;
+      }
+      // from now on rolled chronicles must be remembered until forced
+      trackUnsynced = true;
+      paths = new ArrayList<>(unsynced);
+      unsynced.clear();
+      if (chroniclePath != null) {
+        paths.add(chroniclePath);
+      }
+    }
+    for (String path : paths) {
+      force(path + ".data");
+      force(path + ".index");
+    }
+    if (index > durableIndex) {
+      this.durableIndex = index;
+    }
+  }
+
+  private static void force(String file) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.WRITE)) {
+      channel.force(false);
+    }
+  }
+
+  private static final class Interval {
+    private final long startIndex;
+    /** name of the interval directory */
+    private final String name;
+    private final String path;
+    private final IndexedChronicle chronicle;
+    private final ExcerptAppender appender;
+    /** null if the chronicle was written without a time index */
+    private final TimeIndex.Writer timeIndex;
+
+    private Interval(long startIndex, String name, String path, IndexedChronicle chronicle, ExcerptAppender appender,
+                     TimeIndex.Writer timeIndex) {
+      this.startIndex = startIndex;
+      this.name = name;
+      this.path = path;
+      this.chronicle = chronicle;
+      this.appender = appender;
+      this.timeIndex = timeIndex;
+    }
+
+    private void close() {
+      if (timeIndex != null) {
+        timeIndex.close();
+      }
+      appender.close();
+      try {
+        chronicle.close();
+      } catch (IOException e) {
+        logger.warn("Could not close " + path, e);
+      }
+    }
+  }
 }
@@ -0,0 +1,81 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+/**
+ * Snapshot of the chronicles kept open by readers of a buffer.
+ *
+ * @see LogBuffer.Builder#readersMaxRollingFiles(int)
+ */
+public final class CacheStats {
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final int open;
+  private final int maxOpen;
+
+  CacheStats(long hits, long misses, long evictions, int open, int maxOpen) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.open = open;
+    this.maxOpen = maxOpen;
+  }
+
+  /**
+   * @return number of reads from a chronicle that was already open.
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return number of times a chronicle was opened, including reopens after eviction.
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return number of chronicles closed to stay within the bound.
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return number of chronicles currently open.
+   */
+  public int getOpen() {
+    return open;
+  }
+
+  /**
+   * @return maximum number of open chronicles, Integer.MAX_VALUE if unbounded.
+   */
+  public int getMaxOpen() {
+    return maxOpen;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{" +
+      "hits=" + hits +
+      ", misses=" + misses +
+      ", evictions=" + evictions +
+      ", open=" + open +
+      ", maxOpen=" + maxOpen +
+      '}';
+  }
+}
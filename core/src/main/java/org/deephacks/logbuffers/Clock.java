@@ -0,0 +1,54 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source of log timestamps. The clock is read inside the writer ordering point
+ * and a reading that goes backwards is clamped to the previous timestamp, so
+ * timestamps are never decreasing within a log buffer, regardless of the clock.
+ *
+ * Timestamps are stored with microsecond resolution, the millisecond part decide
+ * which interval a log belong to.
+ */
+public interface Clock {
+
+  /**
+   * @return microseconds since epoch.
+   */
+  public long currentTimeMicros();
+
+  /**
+   * System clock with millisecond resolution, the default.
+   */
+  public static Clock system() {
+    return Clocks.SYSTEM;
+  }
+
+  /**
+   * Microsecond resolution clock that follow the system clock.
+   */
+  public static Clock micros() {
+    return new Clocks.MicrosClock();
+  }
+
+  /**
+   * Cheap clock that read a cached time which is refreshed in the background
+   * with the given resolution.
+   */
+  public static Clock coarse(long resolution, TimeUnit unit) {
+    return new Clocks.CoarseClock(unit.toMicros(resolution));
+  }
+}
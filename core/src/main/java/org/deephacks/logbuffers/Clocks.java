@@ -0,0 +1,128 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.deephacks.logbuffers.Guavas.checkArgument;
+
+/**
+ * Clock implementations.
+ */
+class Clocks {
+
+  static final Clock SYSTEM = () -> System.currentTimeMillis() * 1000;
+
+  /**
+   * Interpolate microseconds from System.nanoTime, anchored at the system clock.
+   * The anchor is moved when the system clock drift more than a millisecond
+   * away from the interpolated time.
+   */
+  static class MicrosClock implements Clock {
+    private volatile Anchor anchor = new Anchor();
+
+    @Override
+    public long currentTimeMicros() {
+      Anchor a = anchor;
+      long micros = a.micros + (System.nanoTime() - a.nanos) / 1000;
+      long millis = System.currentTimeMillis();
+      if (Math.abs(micros / 1000 - millis) > 1) {
+        a = new Anchor();
+        anchor = a;
+        micros = a.micros;
+      }
+      return micros;
+    }
+
+    private static final class Anchor {
+      private final long micros = System.currentTimeMillis() * 1000;
+      private final long nanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * Cache the system time in a volatile that the shared clock thread refresh.
+   */
+  static class CoarseClock implements Clock {
+    private volatile long micros = SYSTEM.currentTimeMicros();
+    private final long resolutionNanos;
+    /** nanoTime of the next refresh, only touched by the clock thread */
+    private long refreshAt;
+
+    CoarseClock(long resolutionMicros) {
+      checkArgument(resolutionMicros > 0, "resolution must be positive");
+      this.resolutionNanos = TimeUnit.MICROSECONDS.toNanos(resolutionMicros);
+      this.refreshAt = System.nanoTime() + resolutionNanos;
+      register(this);
+    }
+
+    @Override
+    public long currentTimeMicros() {
+      return micros;
+    }
+  }
+
+  /** coarse clocks are held weakly so that the clock thread does not keep them alive */
+  private static final List<WeakReference<CoarseClock>> coarseClocks = new ArrayList<>();
+  /** refresh every coarse clock, null if there are no coarse clocks */
+  private static Thread clockThread;
+
+  private static synchronized void register(CoarseClock clock) {
+    coarseClocks.add(new WeakReference<>(clock));
+    if (clockThread == null) {
+      clockThread = new Thread(Clocks::refreshCoarseClocks, "logbuffer-clock");
+      clockThread.setDaemon(true);
+      clockThread.start();
+    } else {
+      // the new clock may have a finer resolution than the clock thread is parked for
+      LockSupport.unpark(clockThread);
+    }
+  }
+
+  /**
+   * Refresh coarse clocks when their resolution have elapsed. The thread exit when
+   * all coarse clocks have been garbage collected.
+   */
+  private static void refreshCoarseClocks() {
+    while (true) {
+      long parkNanos = Long.MAX_VALUE;
+      synchronized (Clocks.class) {
+        long now = System.nanoTime();
+        Iterator<WeakReference<CoarseClock>> it = coarseClocks.iterator();
+        while (it.hasNext()) {
+          CoarseClock clock = it.next().get();
+          if (clock == null) {
+            it.remove();
+            continue;
+          }
+          if (now - clock.refreshAt >= 0) {
+            clock.micros = SYSTEM.currentTimeMicros();
+            clock.refreshAt = now + clock.resolutionNanos;
+          }
+          parkNanos = Math.min(parkNanos, clock.refreshAt - now);
+        }
+        if (coarseClocks.isEmpty()) {
+          clockThread = null;
+          return;
+        }
+      }
+      LockSupport.parkNanos(Clocks.class, parkNanos);
+    }
+  }
+}
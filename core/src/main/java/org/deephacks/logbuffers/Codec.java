@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+/**
+ * Compression of log content. The codec of each log is recorded in its header
+ * so logs written with different codecs can be mixed and are always read back
+ * transparently.
+ */
+public enum Codec {
+  /** content is stored as is */
+  NONE,
+  /**
+   * LZ77 compression in the block format of LZ4. Fast, with modest compression
+   * ratio. Content that does not compress is stored as is.
+   */
+  LZ;
+
+  private static final Codec[] CODECS = values();
+
+  /**
+   * @return id of the codec as recorded in the log header.
+   */
+  int id() {
+    return ordinal();
+  }
+
+  static Codec fromId(int id) {
+    if (id < 0 || id >= CODECS.length) {
+      throw new IllegalStateException("Unknown codec " + id);
+    }
+    return CODECS[id];
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.Dirs.Dir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bound the number of chronicles that readers keep open. When a dir open its
+ * chronicle and the bound is exceeded, the least recently used dirs are closed
+ * and unmapped. Closed dirs reopen their chronicle on demand.
+ * <p/>
+ * Dirs are pinned while their memory is read and pinned dirs are never closed,
+ * so the bound may be exceeded temporarily if every open dir is in use.
+ * Recency is approximate, dirs remember the number of opens at their last use
+ * which avoid shared writes on every read.
+ */
+final class DirCache {
+  private static final Logger logger = LoggerFactory.getLogger(DirCache.class);
+  private static final Comparator<Dir> LEAST_RECENT = Comparator.comparingLong(Dir::lastAccess);
+  private final int maxOpen;
+  private final Set<Dir> open = ConcurrentHashMap.newKeySet();
+  /** number of opens, used as clock for recency */
+  private volatile long epoch = 0;
+  final LongAdder hits = new LongAdder();
+  final LongAdder misses = new LongAdder();
+  final LongAdder evictions = new LongAdder();
+
+  DirCache(int maxOpen) {
+    Guavas.checkArgument(maxOpen > 0, "maxOpen must be positive");
+    this.maxOpen = maxOpen;
+  }
+
+  long epoch() {
+    return epoch;
+  }
+
+  /**
+   * Called by a pinned dir that just opened its chronicle.
+   */
+  synchronized void opened(Dir dir) {
+    misses.increment();
+    epoch++;
+    open.add(dir);
+    if (open.size() <= maxOpen) {
+      return;
+    }
+    List<Dir> candidates = new ArrayList<>(open);
+    candidates.remove(dir);
+    candidates.sort(LEAST_RECENT);
+    for (Dir candidate : candidates) {
+      if (open.size() <= maxOpen) {
+        return;
+      }
+      if (candidate.tryClose()) {
+        logger.debug("evicted {}", candidate);
+        open.remove(candidate);
+        evictions.increment();
+      }
+    }
+  }
+
+  /**
+   * Called when a dir is closed for good.
+   */
+  void closed(Dir dir) {
+    open.remove(dir);
+  }
+
+  /**
+   * @return true if a number of chronicles can be opened without closing those that are open.
+   */
+  boolean hasRoom(int chronicles) {
+    return open.size() + chronicles <= maxOpen;
+  }
+
+  CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), open.size(), maxOpen);
+  }
+}
@@ -8,10 +8,22 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static java.util.Map.Entry;
 
@@ -20,34 +32,64 @@ import static java.util.Map.Entry;
  * <p/>
  * 1)  Logs may have same milli timestamp.
  * 2)  Start/stop time/index far beyond existing directory data.
- * 4)  Missing directories (holes in ranges).
+ * 4)  Missing directories (holes in ranges). Queries jump between known directories
+ *     rather than probing every interval, and probes for holes are remembered.
  * 5)  Base path contain unrecognized data or mixed data ranges.
- * 6)  Huge amount of directories in base path.
+ * 6)  Huge amount of directories in base path. Writers keep a manifest of their
+ *     intervals so readers only list the base path if the manifest is missing.
  * 7)  Padded entries in chronicle.
  * 8)  A time range may be huge so queries need binary search for first range.
- * 9)  Cached directories may exceed max number of file descriptors.
+ * 9)  Cached directories may exceed max number of file descriptors, open chronicles
+ *     are bounded by an optional cache that close the least recently used.
  * 10) A user may base path to a single range directory.
- * <p/>
- * Future improvements.
- * <p/>
- * 9) Backward queries.
+ * 11) Backward queries must see directories created after the cache was filled.
+ * 12) Opening and faulting in the next directory stall a sequential scan, upcoming
+ *     directories are opened and read ahead in the background.
  */
 class Dirs {
   Logger logger = LoggerFactory.getLogger(Dirs.class.getName());
-  TreeMap<Long, Dir> dirs = new TreeMap<>();
+  /** concurrent since any number of threads may read the buffer */
+  ConcurrentSkipListMap<Long, Dir> dirs = new ConcurrentSkipListMap<>();
   RollingRanges ranges;
   private File basePath;
   private ChronicleConfig config;
+  /** bound on chronicles kept open by readers, null if unbounded */
+  final DirCache cache;
+  /** reads intervals appended to the manifest since the last refresh */
+  private Manifest.Reader manifest;
+  /** true if the manifest does not match the ranges of the dirs */
+  private boolean ignoreManifest = false;
+  /** minimum time between listing the base path for new directories */
+  static final long LIST_INTERVAL_MS = 1000;
+  private volatile long lastListed = 0;
+  /** start index of intervals known to be missing */
+  private final Set<Long> missing = ConcurrentHashMap.newKeySet();
+  private static final int MAX_MISSING = 100_000;
+  /** number of directories opened ahead of a query, 0 if disabled */
+  private int readAhead = 0;
+  private Supplier<Executor> readAheadExecutor;
+  /** guards opening directories ahead against closing them */
+  private final Object readAheadLock = new Object();
+  private boolean closed = false;
 
   // test only
   Dirs(TreeMap<Long, Dir> dirs, RollingRanges ranges) {
     this.ranges = ranges;
-    this.dirs = dirs;
+    this.dirs = new ConcurrentSkipListMap<>(dirs);
     this.basePath = new File("");
+    this.cache = null;
   }
 
   Dirs(File basePath, RollingRanges ranges, ChronicleConfig config) {
+    this(basePath, ranges, config, null);
+  }
+
+  /**
+   * @param cache bound on chronicles kept open by readers, null if unbounded.
+   */
+  Dirs(File basePath, RollingRanges ranges, ChronicleConfig config, DirCache cache) {
     this.config = config;
+    this.cache = cache;
     this.basePath = basePath;
     this.ranges = ranges;
     initialize();
@@ -56,6 +98,17 @@ class Dirs {
     }
   }
 
+  /**
+   * Open and read directories ahead of queries in the background.
+   *
+   * @param depth    number of directories ahead of the one being read.
+   * @param executor executor that read ahead, created on first use.
+   */
+  void readAhead(int depth, Supplier<Executor> executor) {
+    this.readAhead = depth;
+    this.readAheadExecutor = executor;
+  }
+
   public AbstractIterable<Dir> execute(final Query query) {
     return new AbstractIterable<Dir>() {
       Range current;
@@ -63,34 +116,26 @@ class Dirs {
 
       @Override
       protected Dir computeNext() {
-        int initRetry = 0;
-
-        while (true) {
-          current = query.nextRange(current, ranges);
-          if (!current.isConnected(queryRange) || pastPresent(current)) {
-            // outside query or past present
-            logger.debug("done {}", query);
-            return null;
-          }
-          Dir dir = jumpNextDir(getIndexRange(current));
-          if (dir == null) {
-            if (dirs.isEmpty()) {
-              // no dirs
-              logger.debug("no dirs {}", basePath);
-              initialize();
-              if (initRetry++ == 1) {
-                return null;
-              }
-              // started off with empty directory
-              continue;
-            }
-            // current range lacks a dir
-            continue;
-          }
-          logger.debug("processing {}", dir);
-          current = query.isIndexQuery() ? dir.getIndexRange() : dir.getTimeRange();
-          return dir;
+        current = query.nextRange(current, ranges);
+        if (!current.isConnected(queryRange) || pastPresent(current)) {
+          // outside query or past present
+          logger.debug("done {}", query);
+          return null;
+        }
+        Dir dir = ceilingDir(getIndexRange(current).start());
+        if (dir == null) {
+          logger.debug("no more dirs {}", basePath);
+          return null;
         }
+        Range range = query.isIndexQuery() ? dir.getIndexRange() : dir.getTimeRange();
+        if (!range.isConnected(queryRange)) {
+          logger.debug("done {}", query);
+          return null;
+        }
+        logger.debug("processing {}", dir);
+        current = range;
+        readAhead(dir, query);
+        return dir;
       }
 
       private boolean pastPresent(Range current) {
@@ -105,54 +150,193 @@ class Dirs {
     };
   }
 
+  /**
+   * Directories of a query from the most recent to the oldest. The base path is
+   * listed again first since directories are otherwise cached lazily going forward.
+   */
+  public AbstractIterable<Dir> executeReversed(final Query query) {
+    refresh();
+    final Iterator<Dir> it = dirs.descendingMap().values().iterator();
+    return new AbstractIterable<Dir>() {
+      @Override
+      protected Dir computeNext() {
+        while (it.hasNext()) {
+          Dir dir = it.next();
+          Range range = query.isIndexQuery() ? dir.getIndexRange() : dir.getTimeRange();
+          if (range.stop() < query.start()) {
+            // before the query
+            return null;
+          }
+          if (range.start() <= query.stop()) {
+            logger.debug("processing {}", dir);
+            readAhead(dir, query);
+            return dir;
+          }
+        }
+        return null;
+      }
+    };
+  }
+
+  /**
+   * Resolve a query for the last logs into the index range of those logs. Dirs
+   * are walked backward from the last written log of the newest dir until enough
+   * logs are found. Striped dirs are resolved into the time range of the logs and
+   * the index ranges of each stripe where they were found.
+   *
+   * @return query for the last logs, or null if no logs match.
+   */
+  Query resolveLast(Query query) {
+    long remaining = query.getLimit();
+    LogStats found = null;
+    List<Range> indexes = new ArrayList<>();
+    boolean striped = false;
+    AbstractIterable<Dir> it = executeReversed(query);
+    Dir dir;
+    while (remaining > 0 && (dir = it.computeNext()) != null) {
+      LogStats last = dir.last(query, remaining, indexes);
+      if (last != null) {
+        found = found == null ? last : last.plus(found);
+        remaining -= last.getCount();
+        striped |= dir instanceof StripedDir;
+      }
+    }
+    if (found == null) {
+      return null;
+    }
+    if (striped) {
+      return query.resolved(found.getFirstTimestamp(), found.getLastTimestamp(), indexes);
+    }
+    return query.resolved(found.getFirstIndex(), found.getLastIndex());
+  }
+
   public Dir getDir(long index) {
     long startIndex = ranges.startIndexForIndex(index);
     Dir dir = dirs.get(startIndex);
-    if (dir != null) {
+    if (dir != null || missing.contains(startIndex)) {
       return dir;
     }
-    dir = Dir.tryCreate(basePath, ranges, startIndex, config);
+    dir = track(Dir.tryCreate(basePath, ranges, startIndex, config));
 
     if (dir != null) {
-      dirs.put(startIndex, dir);
-      return dir;
+      // dirs are opened lazily so a dir created by a racing reader is simply dropped
+      Dir existing = dirs.putIfAbsent(startIndex, dir);
+      return existing != null ? existing : dir;
+    }
+    Entry<Long, Dir> last = dirs.lastEntry();
+    if (last != null && startIndex < last.getKey()) {
+      // writers moved past the interval so it remain missing
+      if (missing.size() >= MAX_MISSING) {
+        missing.clear();
+      }
+      missing.add(startIndex);
     }
     return null;
   }
 
-  private Dir jumpNextDir(Range indexRange) {
-    Dir dir = dirs.get(indexRange.start());
-    if (dir != null) {
-      logger.debug("Cached dir found for index {}", indexRange.start());
-      return dir;
+  /**
+   * Jump to the first known directory at or after an interval. The base path is
+   * refreshed when there are no known directories left, in case new intervals
+   * were created since it was last read. If the base path was listed recently,
+   * only the interval itself is checked.
+   */
+  private Dir ceilingDir(long startIndex) {
+    Entry<Long, Dir> entry = dirs.ceilingEntry(startIndex);
+    if (entry == null) {
+      if (!refreshLazily()) {
+        return ranges == null ? null : getDir(startIndex);
+      }
+      entry = dirs.ceilingEntry(startIndex);
     }
-    Entry<Long, Dir> first = dirs.firstEntry();
-    if (first != null && indexRange.start() < first.getKey().longValue()) {
-      return first.getValue();
+    return entry == null ? null : entry.getValue();
+  }
+
+  /**
+   * Schedule reading ahead of the directories that follow a directory in a query.
+   */
+  private void readAhead(Dir dir, Query query) {
+    Long key = dir.getIndexRange().start();
+    // leave room for the dir that is read, it may not have been opened yet
+    int opening = dir.isOpen() ? 0 : 1;
+    for (int i = 0; i < readAhead; i++) {
+      Entry<Long, Dir> next = query.isReversed() ? dirs.lowerEntry(key) : dirs.higherEntry(key);
+      if (next == null) {
+        return;
+      }
+      Dir ahead = next.getValue();
+      Range range = query.isIndexQuery() ? ahead.getIndexRange() : ahead.getTimeRange();
+      if (!range.isConnected(query.getRange())) {
+        return;
+      }
+      opening += ahead.isOpen() ? 0 : 1;
+      if (cache != null && !cache.hasRoom(opening)) {
+        // opening ahead would evict dirs that queries are reading
+        return;
+      }
+      if (ahead.scheduleReadAhead()) {
+        readAheadExecutor.get().execute(() -> readAhead(ahead));
+      }
+      key = next.getKey();
     }
-    dir = Dir.tryCreate(basePath, ranges, indexRange.start(), config);
-    if (dir != null) {
-      if (dirs.containsKey(indexRange.start())) {
-        return dirs.get(indexRange.start());
+  }
+
+  private void readAhead(Dir dir) {
+    try {
+      synchronized (readAheadLock) {
+        if (closed) {
+          return;
+        }
+        if (cache != null && !cache.hasRoom(1) && !dir.isOpen()) {
+          // the cache filled up since the dir was scheduled
+          dir.readAheadScheduled = false;
+          return;
+        }
+        dir.openAhead();
       }
-      dirs.put(indexRange.start(), dir);
-      return dir;
+      dir.readAhead();
+    } catch (Exception e) {
+      // only an optimization, the reader open the dir itself
+      logger.debug("Could not read ahead " + dir, e);
     }
-    return null;
   }
 
   void initialize() {
     if (!dirs.isEmpty()) {
       return;
     }
+    refresh();
+  }
+
+  /**
+   * Refresh unless there is no manifest and the base path was listed recently.
+   *
+   * @return true if refreshed.
+   */
+  private boolean refreshLazily() {
+    boolean hasManifest = !ignoreManifest && (manifest != null || Manifest.Reader.exists(basePath));
+    if (hasManifest || System.currentTimeMillis() - lastListed >= LIST_INTERVAL_MS) {
+      refresh();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Add directories of the base path that are not cached yet.
+   */
+  void refresh() {
     if (!basePath.exists()) {
       throw new IllegalArgumentException("Basepath does not exist " + basePath);
     }
+    if (refreshFromManifest()) {
+      return;
+    }
+    this.lastListed = System.currentTimeMillis();
     try (DirectoryStream<Path> stream = Files.newDirectoryStream(basePath.toPath())) {
       for (Path p : stream) {
-        Dir dir = Dir.tryCreate(p.toFile(), ranges, config);
+        Dir dir = track(Dir.tryCreate(p.toFile(), ranges, config));
         if (dir != null) {
-          dirs.put(dir.getIndexRange().start(), dir);
+          dirs.putIfAbsent(dir.getIndexRange().start(), dir);
           this.ranges = dir.ranges;
         }
       }
@@ -161,7 +345,61 @@ class Dirs {
     }
   }
 
+  /**
+   * Add intervals listed in the manifest of the base path that are not cached yet.
+   *
+   * @return false if there is no manifest and the base path must be listed instead.
+   */
+  private synchronized boolean refreshFromManifest() {
+    if (ignoreManifest) {
+      return false;
+    }
+    if (manifest == null) {
+      if (!Manifest.Reader.exists(basePath)) {
+        return false;
+      }
+      manifest = new Manifest.Reader(basePath);
+    }
+    List<Manifest.Entry> entries = manifest.readNew();
+    RollingRanges manifestRanges = ranges != null ? ranges : manifest.ranges();
+    if (entries == null || manifestRanges == null || manifestRanges.getInterval() != manifest.getInterval()) {
+      logger.warn("Ignoring manifest that does not match the intervals of {}", basePath);
+      ignoreManifest = true;
+      return false;
+    }
+    this.ranges = manifestRanges;
+    for (Manifest.Entry entry : entries) {
+      if (dirs.containsKey(entry.startIndex)) {
+        continue;
+      }
+      File intervalDir = new File(basePath, entry.name);
+      if (!intervalDir.isDirectory()) {
+        // removed
+        continue;
+      }
+      File chronicle = new File(intervalDir, entry.name);
+      Dir dir = entry.stripes > 1
+        ? new StripedDir(chronicle, intervalDir, ranges, config, entry.stripes)
+        : new Dir(chronicle, ranges, config);
+      dirs.putIfAbsent(entry.startIndex, track(dir));
+    }
+    return true;
+  }
+
+  /**
+   * Let the cache bound the chronicles opened by a new dir.
+   */
+  private Dir track(Dir dir) {
+    if (dir != null) {
+      dir.cache = cache;
+    }
+    return dir;
+  }
+
   public void close() throws IOException {
+    synchronized (readAheadLock) {
+      closed = true;
+    }
     for (Dir dir : dirs.values()) {
       dir.close();
     }
@@ -182,8 +420,28 @@ class Dirs {
     private final long indexOffset;
     private final RollingRanges ranges;
     private ChronicleConfig config;
-    private IndexedChronicle chronicle;
-    private ExcerptTailer tailer;
+    private volatile IndexedChronicle chronicle;
+    /** one tailer per reader thread since every read reposition the tailer */
+    private final ThreadLocal<ThreadTailer> tailers = new ThreadLocal<>();
+    /** tailers of all threads, closed with the dir or when their thread have died */
+    private final Queue<ThreadTailer> allTailers = new ConcurrentLinkedQueue<>();
+    /** base path is the chronicle itself, never a range directory */
+    private final boolean exactPath;
+    /** sparse time index written next to the chronicle */
+    private volatile TimeIndex timeIndex;
+    /** bound on open chronicles, null if unbounded */
+    DirCache cache;
+    /** readers that use mapped memory of the chronicle, -1 while it is being closed */
+    private final AtomicInteger pins = new AtomicInteger();
+    /** epoch of the cache when the dir was last used */
+    private volatile long lastAccess;
+    /** logs written so far, extended with logs written since the last query */
+    private LogStats summary;
+    /** true if a query scheduled reading ahead of this dir, reset when the chronicle is closed */
+    volatile boolean readAheadScheduled = false;
+    /** bytes of each file read ahead into the page cache */
+    private static final long MAX_READ_AHEAD_BYTES = 64 * 1024 * 1024;
+    private static final int READ_AHEAD_CHUNK = 64 * 1024;
 
     Dir(File basePath, RollingRanges ranges, ChronicleConfig config) {
       this.config = config;
@@ -192,6 +450,20 @@ class Dirs {
       this.indexRange = ranges.toIndexRange(timeRange);
       this.basePath = basePath.toString();
       this.indexOffset = ranges.indexOffset(timeRange.start());
+      this.exactPath = false;
+    }
+
+    /**
+     * A chronicle that own part of the index range of an interval.
+     */
+    Dir(File chroniclePath, RollingRanges ranges, ChronicleConfig config, Range timeRange, Range indexRange) {
+      this.config = config;
+      this.ranges = ranges;
+      this.timeRange = timeRange;
+      this.indexRange = indexRange;
+      this.basePath = chroniclePath.toString();
+      this.indexOffset = indexRange.start();
+      this.exactPath = true;
     }
 
     public static Dir tryCreate(File basePath, RollingRanges ranges, ChronicleConfig config) {
@@ -203,6 +475,10 @@ class Dirs {
       if (ranges == null) {
         ranges = RollingRanges.tryCreate(dir.get().getName());
       }
+      StripedDir striped = StripedDir.tryCreateStriped(dir.get(), ranges, config);
+      if (striped != null) {
+        return striped;
+      }
       return new Dir(dir.get(), ranges, config);
     }
 
@@ -213,6 +489,10 @@ class Dirs {
         logger.debug("No dir found {}", dir);
         return null;
       }
+      StripedDir striped = StripedDir.tryCreateStriped(new File(dir, intervalDir), ranges, config);
+      if (striped != null) {
+        return striped;
+      }
       return new Dir(new File(dir, intervalDir), ranges, config);
     }
 
@@ -228,6 +508,9 @@ class Dirs {
         } else {
           return Optional.empty();
         }
+      } else if (file.isFile()) {
+        // sidecar files like the time index
+        return Optional.empty();
       }
       return Optional.of(new File(file, file.getName()));
     }
@@ -252,10 +535,34 @@ class Dirs {
       return timeRange;
     }
 
+    RollingRanges ranges() {
+      return ranges;
+    }
+
+    ChronicleConfig config() {
+      return config;
+    }
+
     public AbstractIterable<Log> iterate(final Query search) {
       return iterate(indexRange.start(), search);
     }
 
+    /**
+     * Iterate logs of the first directory of a query. Time queries are special
+     * because the start index must be found quickly, after that simply iterate
+     * til end of query.
+     */
+    AbstractIterable<Log> iterateFirst(Query query) {
+      if (query.isTimeQuery()) {
+        return iterate(findFirstIndex(this, query), query);
+      }
+      long startIndex = query.start();
+      if (startIndex < indexRange.start()) {
+        startIndex = indexRange.start();
+      }
+      return iterate(startIndex, query);
+    }
+
     public AbstractIterable<Log> iterate(final long startIndex, final Query search) {
       logger.debug("iterating logs from {}", startIndex);
       return new AbstractIterable<Log>() {
@@ -266,7 +573,7 @@ class Dirs {
         @Override
         protected Log computeNext() {
           while (true) {
-            Log log = getLog(index++);
+            Log log = search.hasFilter() ? getMatchingLog(index++, search) : getLog(index++);
             if (log != null && !log.isPaddedEntry()) {
               last = log;
               numLogs++;
@@ -283,6 +590,246 @@ class Dirs {
       };
     }
 
+    /**
+     * Move a cursor over the logs of a query without creating log objects.
+     *
+     * @return false if the scan passed the end of the query.
+     */
+    boolean scan(Query query, LogCursor cursor, Consumer<LogCursor> consumer) {
+      long index = query.isTimeQuery() ? findFirstIndex(this, query) : Math.max(query.start(), indexRange.start());
+      pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        for (; indexRange.contains(index); index++) {
+          if (!tailer.index(index - indexOffset)) {
+            if (tailer.wasPadding()) {
+              continue;
+            }
+            // at the end
+            return true;
+          }
+          if (Log.isAfter(tailer, index, query)) {
+            return false;
+          }
+          if (Log.matchesHeader(tailer, query) && (query.isIndexQuery() || tailer.readLong(0) >= query.start())) {
+            cursor.wrap(index, tailer);
+            if (Log.matchesContent(cursor, query)) {
+              consumer.accept(cursor);
+            }
+          }
+        }
+        return true;
+      } finally {
+        unpin();
+      }
+    }
+
+    /**
+     * Summarize the logs of a query within this dir from the index of the chronicle,
+     * reading only headers of the first and last log unless the query have filters.
+     * Dirs that are covered by a query without filters are summarized once and then
+     * extended with logs written since.
+     *
+     * @return null if no logs match.
+     */
+    LogStats stats(Query query) {
+      long lastWritten = getLastWrittenIndex();
+      Range range = query.isIndexQuery() ? indexRange : timeRange;
+      if (!query.hasFilter() && query.start() <= range.start() && query.stop() >= range.stop()) {
+        return summary(lastWritten);
+      }
+      if (query.isTimeQuery()) {
+        return stats(findFirstIndex(this, query), Math.min(lastWritten, findStopIndex(this, query)), query);
+      }
+      return stats(Math.max(query.start(), indexRange.start()), Math.min(lastWritten, query.stop()), query);
+    }
+
+    private synchronized LogStats summary(long lastWritten) {
+      if (summary == null) {
+        summary = stats(indexRange.start(), lastWritten, null);
+      } else if (summary.getLastIndex() < lastWritten) {
+        LogStats written = stats(summary.getLastIndex() + 1, lastWritten, null);
+        if (written != null) {
+          summary = summary.plus(written);
+        }
+      }
+      return summary;
+    }
+
+    /**
+     * @param query filters to check and time bounds of the first log, null if all logs match.
+     */
+    private LogStats stats(long start, long stop, Query query) {
+      long count = 0;
+      long bytes = 0;
+      long first = -1;
+      long firstTimestamp = 0;
+      long last = -1;
+      pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        for (long index = Math.max(start, indexRange.start()); index <= stop; index++) {
+          if (!tailer.index(index - indexOffset)) {
+            if (tailer.wasPadding()) {
+              continue;
+            }
+            // at the end
+            break;
+          }
+          if (query != null) {
+            if (first < 0 && query.isTimeQuery() && tailer.readLong(0) < query.start()) {
+              // the first index of a time query may be found before the query
+              continue;
+            }
+            if (query.hasFilter() && !(Log.matchesHeader(tailer, query) && Log.matchesContent(tailer, index, query))) {
+              continue;
+            }
+          }
+          if (first < 0) {
+            first = index;
+            firstTimestamp = tailer.readLong(0);
+          }
+          last = index;
+          count++;
+          bytes += tailer.capacity() - Log.HEADER_LENGTH;
+        }
+        if (count == 0) {
+          return null;
+        }
+        tailer.index(last - indexOffset);
+        return new LogStats(timeRange, count, bytes, first, last, firstTimestamp, tailer.readLong(0));
+      } finally {
+        unpin();
+      }
+    }
+
+    /**
+     * Walk backward from the last log of a query within this dir, skipping padded
+     * entries, until a number of matching logs are found.
+     *
+     * @param indexes where the index range of the logs found is added.
+     * @return the most recent matching logs, at most n, or null if no logs match.
+     */
+    LogStats last(Query query, long n, List<Range> indexes) {
+      long lastWritten = getLastWrittenIndex();
+      long stop = Math.min(lastWritten, query.isIndexQuery() ? query.stop() : findStopIndex(this, query));
+      long start = query.isIndexQuery() ? Math.max(query.start(), indexRange.start()) : indexRange.start();
+      long count = 0;
+      long bytes = 0;
+      long first = -1;
+      long firstTimestamp = 0;
+      long last = -1;
+      long lastTimestamp = 0;
+      pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        for (long index = stop; index >= start && count < n; index--) {
+          if (!tailer.index(index - indexOffset)) {
+            // padded or not yet written
+            continue;
+          }
+          long timestamp = tailer.readLong(0);
+          if (query.isTimeQuery()) {
+            if (timestamp > query.stop()) {
+              continue;
+            }
+            if (timestamp < query.start()) {
+              // before the query
+              break;
+            }
+          }
+          if (query.hasFilter() && !(Log.matchesHeader(tailer, query) && Log.matchesContent(tailer, index, query))) {
+            continue;
+          }
+          if (last < 0) {
+            last = index;
+            lastTimestamp = timestamp;
+          }
+          first = index;
+          firstTimestamp = timestamp;
+          count++;
+          bytes += tailer.capacity() - Log.HEADER_LENGTH;
+        }
+      } finally {
+        unpin();
+      }
+      if (count == 0) {
+        return null;
+      }
+      indexes.add(Range.closed(first, last));
+      return new LogStats(timeRange, count, bytes, first, last, firstTimestamp, lastTimestamp);
+    }
+
+    /**
+     * Iterate logs of a query backward from the last log of the query within
+     * this directory, skipping padded entries.
+     */
+    AbstractIterable<Log> iterateReversed(final Query query) {
+      long stopIndex = getLastWrittenIndex();
+      if (query.isIndexQuery()) {
+        stopIndex = Math.min(stopIndex, query.stop());
+      } else {
+        stopIndex = Math.min(stopIndex, findStopIndex(this, query));
+      }
+      final long startIndex = stopIndex;
+      return new AbstractIterable<Log>() {
+        long index = startIndex;
+
+        @Override
+        protected Log computeNext() {
+          while (index >= indexRange.start()) {
+            Log log = getLog(index--);
+            if (log == null || log.isPaddedEntry()) {
+              continue;
+            }
+            if (log.isIn(query)) {
+              if (log.matches(query)) {
+                return log;
+              }
+            } else if (!log.greaterThan(query)) {
+              // before the query
+              return null;
+            }
+          }
+          return null;
+        }
+      };
+    }
+
+    /**
+     * Find the first log at or after a time using the time index of the chronicle.
+     *
+     * @return index of the first log at or after the time, lastWritten + 1 if there
+     * is none, or -1 if the chronicle have no time index.
+     */
+    long seekTime(long time, long lastWritten) {
+      if (timeIndex == null) {
+        timeIndex = new TimeIndex(chroniclePath());
+      }
+      long index = timeIndex.seek(time, lastWritten);
+      if (index < 0) {
+        return -1;
+      }
+      pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        for (; index <= lastWritten; index++) {
+          if (!tailer.index(index - indexOffset)) {
+            if (tailer.wasPadding()) {
+              continue;
+            }
+            break;
+          }
+          if (tailer.readLong(0) >= time) {
+            return index;
+          }
+        }
+        return lastWritten + 1;
+      } finally {
+        unpin();
+      }
+    }
+
     Log binarySearchAfterOrEqualTime(long startTime, long lastWritten) {
       long low = indexRange.start();
       long high = lastWritten;
@@ -336,52 +883,305 @@ class Dirs {
     }
 
     public Log getLog(long index) {
-      initalize();
       if (!indexRange.contains(index)) {
         logger.debug("indexRange {} notContains {}", indexRange, index);
         return null;
       }
       long localIndex = index - indexOffset;
-      if (!tailer.index(localIndex)) {
-        if (tailer.wasPadding()) {
-          logger.debug("padded ", index);
-          return Log.paddedEntry(localIndex, index);
+      pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        if (!tailer.index(localIndex)) {
+          if (tailer.wasPadding()) {
+            logger.debug("padded ", index);
+            return Log.paddedEntry(localIndex, index);
+          }
+          logger.debug("chronicle {} notContain {} {}", basePath, index, localIndex);
+          return null;
         }
-        logger.debug("chronicle {} notContain {} {}", basePath, index, localIndex);
+      } finally {
+        unpin();
+      }
+      return new Log(localIndex, index, this);
+    }
+
+    /**
+     * Get a log only if its header and content match the filters of a query,
+     * checked in mapped memory before a log object is created.
+     *
+     * @return the log, a padded entry if the log did not match or null if there are
+     * no more logs within the query.
+     */
+    Log getMatchingLog(long index, Query query) {
+      if (!indexRange.contains(index)) {
         return null;
       }
-      return new Log(localIndex, index, tailer);
+      long localIndex = index - indexOffset;
+      pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        if (!tailer.index(localIndex)) {
+          return tailer.wasPadding() ? Log.FILTERED : null;
+        }
+        if (Log.isAfter(tailer, index, query)) {
+          return null;
+        }
+        if (!Log.matchesHeader(tailer, query) || !Log.matchesContent(tailer, index, query)) {
+          return Log.FILTERED;
+        }
+      } finally {
+        unpin();
+      }
+      return new Log(localIndex, index, this);
     }
 
-    public void close() throws IOException {
+    /**
+     * @return tailer of the calling thread, logs use it to read from any thread.
+     * Must be pinned if the dir may be evicted.
+     */
+    ExcerptTailer tailer() {
+      ThreadTailer tailer = tailers.get();
+      IndexedChronicle current = chronicle;
+      if (tailer == null || tailer.chronicle != current) {
+        // first read of the thread or the chronicle was reopened after eviction
+        initalize();
+        current = chronicle;
+        releaseDeadTailers();
+        try {
+          tailer = new ThreadTailer(current, current.createTailer());
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+        tailers.set(tailer);
+        allTailers.add(tailer);
+      }
+      return tailer.tailer;
+    }
+
+    /**
+     * Close tailers of reader threads that have died, like threads of pools
+     * that come and go, since they are otherwise kept until the dir is closed.
+     */
+    private void releaseDeadTailers() {
+      for (ThreadTailer tailer : allTailers) {
+        // only the thread that remove the tailer close it
+        if (!tailer.isOwnerAlive() && allTailers.remove(tailer)) {
+          tailer.tailer.close();
+        }
+      }
+    }
+
+    /**
+     * @return number of open tailers, one per thread that have read the chronicle.
+     */
+    int numTailers() {
+      return allTailers.size();
+    }
+
+    /**
+     * Keep the chronicle open while its memory is read. No-op if unbounded.
+     */
+    void pin() {
+      if (cache == null) {
+        return;
+      }
+      int pinned;
+      while ((pinned = pins.get()) < 0 || !pins.compareAndSet(pinned, pinned + 1)) {
+        if (pinned < 0) {
+          // being closed, reopened when done
+          Thread.yield();
+        }
+      }
+      long epoch = cache.epoch();
+      if (lastAccess != epoch) {
+        lastAccess = epoch;
+      }
+      if (chronicle != null) {
+        cache.hits.increment();
+      }
+    }
+
+    void unpin() {
+      if (cache != null) {
+        pins.decrementAndGet();
+      }
+    }
+
+    long lastAccess() {
+      return lastAccess;
+    }
+
+    /**
+     * Close the chronicle unless it is pinned. It is reopened on the next read.
+     *
+     * @return true if closed.
+     */
+    boolean tryClose() {
+      if (!pins.compareAndSet(0, -1)) {
+        return false;
+      }
+      try {
+        closeChronicle();
+      } catch (IOException e) {
+        logger.warn("Could not close " + basePath, e);
+      } finally {
+        pins.set(0);
+      }
+      return true;
+    }
+
+    private synchronized void closeChronicle() throws IOException {
+      ThreadTailer tailer;
+      while ((tailer = allTailers.poll()) != null) {
+        tailer.tailer.close();
+      }
       if (chronicle != null) {
         chronicle.close();
+        chronicle = null;
       }
-      if (tailer != null) {
-        tailer.close();
+      // read ahead again if the dir is reopened
+      readAheadScheduled = false;
+    }
+
+    boolean isOpen() {
+      return chronicle != null;
+    }
+
+    /**
+     * @return true if the dir should be read ahead, false if it already was.
+     */
+    boolean scheduleReadAhead() {
+      if (readAheadScheduled) {
+        return false;
+      }
+      readAheadScheduled = true;
+      return true;
+    }
+
+    public void close() throws IOException {
+      closeChronicle();
+      if (cache != null) {
+        cache.closed(this);
       }
     }
 
     public long getLastWrittenIndex() {
-      initalize();
-      long index = chronicle.findTheLastIndex();
-      return indexOffset + (index == -1 ? 0 : index);
+      pin();
+      try {
+        initalize();
+        long index = chronicle.findTheLastIndex();
+        return indexOffset + (index == -1 ? 0 : index);
+      } finally {
+        unpin();
+      }
+    }
+
+    /**
+     * Open the chronicle and map the blocks of its first log, unless nothing
+     * have been written to it.
+     */
+    void openAhead() {
+      if (!new File(chroniclePath() + ".data").exists()) {
+        return;
+      }
+      pin();
+      try {
+        tailer().index(0);
+      } finally {
+        unpin();
+      }
+    }
+
+    /**
+     * Read the written part of the index and data files so that their pages are
+     * in the page cache when the chronicle is read.
+     */
+    void readAhead() throws IOException {
+      String path = chroniclePath();
+      if (!new File(path + ".data").exists()) {
+        return;
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect(READ_AHEAD_CHUNK);
+      readAhead(Paths.get(path + ".index"), buffer);
+      readAhead(Paths.get(path + ".data"), buffer);
+    }
+
+    private static void readAhead(Path file, ByteBuffer buffer) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        long limit = Math.min(channel.size(), MAX_READ_AHEAD_BYTES);
+        for (long position = 0; position < limit; ) {
+          buffer.clear();
+          int read = channel.read(buffer, position);
+          if (read <= 0 || isZero(buffer, read)) {
+            // files are allocated in blocks, zeros have not been written yet
+            return;
+          }
+          position += read;
+        }
+      }
     }
 
+    private static boolean isZero(ByteBuffer buffer, int length) {
+      int i = 0;
+      for (; i + 8 <= length; i += 8) {
+        if (buffer.getLong(i) != 0) {
+          return false;
+        }
+      }
+      for (; i < length; i++) {
+        if (buffer.get(i) != 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private String chroniclePath() {
+      File file = new File(basePath);
+      File parent = file.getParentFile();
+      if (!exactPath && (parent == null || !parent.getName().equals(file.getName()))) {
+        // log buffer basePath pointed to a specific range /tmp/logbuffer/2014-11-09-00-28-41-GMT
+        file = new File(file, file.getName());
+      }
+      return file.toString();
+    }
+
+    /**
+     * Open the chronicle if needed. Must be pinned if the dir may be evicted.
+     */
     private void initalize() {
-      if (chronicle == null) {
-        try {
-          File file = new File(basePath);
-          if (!file.getParentFile().getName().equals(file.getName())) {
-            // log buffer basePath pointed to a specific range /tmp/logbuffer/2014-11-09-00-28-41-GMT
-            file = new File(file, file.getName());
+      boolean opened = false;
+      synchronized (this) {
+        if (chronicle == null) {
+          try {
+            chronicle = new IndexedChronicle(chroniclePath(), config);
+            opened = true;
+          } catch (Exception e) {
+            throw new RuntimeException(e);
           }
-          chronicle = new IndexedChronicle(file.toString(), config);
-          tailer = chronicle.createTailer();
-        } catch (Exception e) {
-          throw new RuntimeException(e);
         }
       }
+      if (opened && cache != null) {
+        // outside the dir lock since the cache lock close other dirs
+        cache.opened(this);
+      }
+    }
+
+    private static final class ThreadTailer {
+      private final IndexedChronicle chronicle;
+      private final ExcerptTailer tailer;
+      /** weak to not keep threads of pools that come and go */
+      private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+
+      private ThreadTailer(IndexedChronicle chronicle, ExcerptTailer tailer) {
+        this.chronicle = chronicle;
+        this.tailer = tailer;
+      }
+
+      private boolean isOwnerAlive() {
+        Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+      }
     }
 
     @Override
@@ -399,12 +1199,22 @@ class Dirs {
     boolean foundFirst = false;
     AbstractIterable<Log> logs;
     AbstractIterable<Dir> dirs;
+    /** logs after this index are not returned */
+    long maxIndex = Long.MAX_VALUE;
 
     public LogIterator(Dirs dirs, Query query) {
-      this.dirs = dirs.execute(query);
+      this.dirs = query.isReversed() ? dirs.executeReversed(query) : dirs.execute(query);
       this.query = query;
     }
 
+    /**
+     * @param maxIndex stop before the first log with an index greater than this.
+     */
+    public LogIterator(Dirs dirs, Query query, long maxIndex) {
+      this(dirs, query);
+      this.maxIndex = maxIndex;
+    }
+
     public LogIterator(Dir dir) {
       this.dir = dir;
       this.query = Query.closedIndex(dir.indexRange.start(), dir.indexRange.stop());
@@ -421,23 +1231,18 @@ class Dirs {
           // no more directories
           return null;
         }
-        // time queries are special because startIndex on FIRST range ONLY
-        // must be found quickly, after that simply iterate til end of query
-        if (logs == null && query.isTimeQuery() && !foundFirst) {
-          long firstIndex = findFirstIndex(dir, query);
-          logs = dir.iterate(firstIndex, query);
-          foundFirst = true;
-        } else if (logs == null && query.isIndexQuery() && !foundFirst) {
-          long startIndex = query.start();
-          if (startIndex < dir.getIndexRange().start()) {
-            startIndex = dir.getIndexRange().start();
-          }
-          logs = dir.iterate(startIndex, query);
+        if (logs == null && query.isReversed()) {
+          logs = dir.iterateReversed(query);
+        } else if (logs == null && !foundFirst) {
+          logs = dir.iterateFirst(query);
           foundFirst = true;
         } else if (logs == null) {
           logs = dir.iterate(query);
         }
         Log log = logs.computeNext();
+        if (log != null && log.getIndex() > maxIndex) {
+          return null;
+        }
         if (log != null && log.isIn(query)) {
           last = log;
           return log;
@@ -461,6 +1266,10 @@ class Dirs {
     long startIndex = dir.indexRange.start();
     if (search.isTimeQuery()) {
       final long lastWrittenIndex = dir.getLastWrittenIndex();
+      long index = dir.seekTime(search.start(), lastWrittenIndex);
+      if (index >= 0) {
+        return index;
+      }
       Log log = dir.binarySearchAfterOrEqualTime(search.start(), lastWrittenIndex);
       if (log != null) {
         startIndex = log.getIndex();
@@ -469,4 +1278,35 @@ class Dirs {
     return startIndex;
   }
 
+  /**
+   * Find the last index of a directory within the time bounds of a query, or
+   * Long.MAX_VALUE if the query does not end among the logs written so far.
+   */
+  public static long findStopIndex(Dir dir, Query search) {
+    if (!search.isTimeQuery() || search.stop() >= dir.timeRange.stop()) {
+      return Long.MAX_VALUE;
+    }
+    long stopIndex = Long.MAX_VALUE;
+    long low = dir.indexRange.start();
+    long high = dir.getLastWrittenIndex();
+    long index = dir.seekTime(search.stop() + 1, high);
+    if (index >= 0) {
+      return index <= high ? index - 1 : stopIndex;
+    }
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      Log log = dir.getLog(mid);
+      // skip padded entries forward
+      while (log != null && log.isPaddedEntry() && log.getIndex() < high) {
+        log = dir.getLog(log.getIndex() + 1);
+      }
+      if (log == null || log.isPaddedEntry() || log.getTimestamp() > search.stop()) {
+        stopIndex = mid - 1;
+        high = mid - 1;
+      } else {
+        low = log.getIndex() + 1;
+      }
+    }
+    return stopIndex;
+  }
 }
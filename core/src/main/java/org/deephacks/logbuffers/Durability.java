@@ -0,0 +1,99 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.deephacks.logbuffers.Guavas.checkArgument;
+
+/**
+ * How often written logs are forced to disk, trading throughput against the
+ * amount of logs that may be lost if the machine crash. Logs that have been
+ * forced are durable and their index is available from
+ * {@link LogBuffer#getDurableIndex()}.
+ * <p/>
+ * Policies other than per write are enforced by a background flusher thread.
+ */
+public final class Durability {
+  enum Mode { NONE, INTERVAL, RECORDS, WRITE }
+
+  private static final Durability NONE = new Durability(Mode.NONE, 0, 0);
+  private static final Durability WRITE = new Durability(Mode.WRITE, 0, 0);
+
+  final Mode mode;
+  final long intervalNanos;
+  final int records;
+
+  private Durability(Mode mode, long intervalNanos, int records) {
+    this.mode = mode;
+    this.intervalNanos = intervalNanos;
+    this.records = records;
+  }
+
+  /**
+   * Leave it to the operating system to write logs to disk. This is the default.
+   */
+  public static Durability none() {
+    return NONE;
+  }
+
+  /**
+   * Force written logs to disk periodically.
+   */
+  public static Durability interval(long interval, TimeUnit unit) {
+    checkArgument(interval > 0, "interval must be positive");
+    return new Durability(Mode.INTERVAL, unit.toNanos(interval), 0);
+  }
+
+  /**
+   * Force written logs to disk every number of logs written by each writer.
+   */
+  public static Durability records(int records) {
+    checkArgument(records > 0, "records must be positive");
+    return new Durability(Mode.RECORDS, 0, records);
+  }
+
+  /**
+   * Force each log to disk before the write return. Safest and slowest.
+   */
+  public static Durability perWrite() {
+    return WRITE;
+  }
+
+  /**
+   * @return true if the policy is enforced by the background flusher.
+   */
+  boolean isPeriodic() {
+    return mode == Mode.INTERVAL || mode == Mode.RECORDS;
+  }
+
+  /**
+   * @return true if the policy force written logs to disk.
+   */
+  boolean isForced() {
+    return mode != Mode.NONE;
+  }
+
+  @Override
+  public String toString() {
+    switch (mode) {
+      case INTERVAL:
+        return "Durability{interval=" + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + "ms}";
+      case RECORDS:
+        return "Durability{records=" + records + "}";
+      default:
+        return "Durability{" + mode.name().toLowerCase() + "}";
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Group commit of written logs. A background thread coalesce all pending writes
+ * into a single force of the chronicle files every interval or every number of
+ * pending writes, whichever comes first.
+ * <p/>
+ * The thread also enforce periodic durability policies by forcing everything
+ * written when the policy interval elapse or when a writer request it.
+ */
+class Flusher {
+  private static final Logger logger = LoggerFactory.getLogger(Flusher.class);
+  private final Supplier<AppenderHolder[]> holders;
+  private final long intervalNanos;
+  private final int maxPending;
+  private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger numPending = new AtomicInteger();
+  final Thread thread;
+  private final Durability durability;
+  /** set by writers that have written the number of logs of the durability policy */
+  private volatile boolean forceRequested = false;
+  private long nextForceNanos;
+  private volatile boolean closed = false;
+
+  /**
+   * @param holders       appenders to force, may return null if nothing have been written.
+   * @param intervalNanos max time a write wait before being forced to disk.
+   * @param maxPending    number of pending writes that trigger a force before the interval elapse.
+   * @param durability    policy for forcing logs that are not written asynchronously.
+   */
+  Flusher(Supplier<AppenderHolder[]> holders, long intervalNanos, int maxPending, Durability durability) {
+    this.holders = holders;
+    this.durability = durability;
+    this.intervalNanos = durability.mode == Durability.Mode.INTERVAL
+      ? Math.min(intervalNanos, durability.intervalNanos) : intervalNanos;
+    this.maxPending = maxPending;
+    this.nextForceNanos = System.nanoTime() + durability.intervalNanos;
+    this.thread = new Thread(this::run, "logbuffer-flusher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Register a written log index. The future complete when the log is on disk.
+   */
+  CompletableFuture<Long> register(long index) {
+    CompletableFuture<Long> future = new CompletableFuture<>();
+    if (closed) {
+      future.completeExceptionally(new IllegalStateException("Log buffer is closed"));
+      return future;
+    }
+    pending.add(new Pending(index, future));
+    int n = numPending.incrementAndGet();
+    if (n == 1 || n >= maxPending) {
+      // wake the thread from idle or flush a full group early
+      LockSupport.unpark(thread);
+    }
+    if (closed) {
+      // the thread may already have done its final flush, nobody else will flush
+      flush();
+    }
+    return future;
+  }
+
+  /**
+   * Ask the background thread to force everything written so far.
+   */
+  void requestForce() {
+    forceRequested = true;
+    LockSupport.unpark(thread);
+  }
+
+  private void run() {
+    while (!closed) {
+      if (numPending.get() == 0 && !forceRequested) {
+        // nothing to flush, sleep until a write is registered or the policy interval is due
+        if (durability.mode == Durability.Mode.INTERVAL) {
+          LockSupport.parkNanos(this, nextForceNanos - System.nanoTime());
+        } else {
+          LockSupport.park(this);
+        }
+        if (numPending.get() == 0) {
+          flush();
+          continue;
+        }
+      }
+      if (!forceRequested && numPending.get() < maxPending) {
+        // give concurrent writes one interval to join the same force
+        LockSupport.parkNanos(this, intervalNanos);
+      }
+      flush();
+    }
+    // complete writes that was registered before closing
+    forceRequested = durability.isPeriodic();
+    flush();
+  }
+
+  private synchronized void flush() {
+    List<Pending> flushing = new ArrayList<>();
+    Pending p;
+    while ((p = pending.poll()) != null) {
+      flushing.add(p);
+    }
+    if (flushing.isEmpty() && !isForceDue()) {
+      return;
+    }
+    forceRequested = false;
+    nextForceNanos = System.nanoTime() + durability.intervalNanos;
+    numPending.addAndGet(-flushing.size());
+    try {
+      // every registered write completed before it was registered so
+      // one force cover all of them
+      AppenderHolder[] appenderHolders = holders.get();
+      if (appenderHolders != null) {
+        for (AppenderHolder appenderHolder : appenderHolders) {
+          appenderHolder.force();
+        }
+      }
+      for (Pending written : flushing) {
+        written.future.complete(written.index);
+      }
+    } catch (Throwable e) {
+      logger.warn("Could not force logs to disk", e);
+      for (Pending written : flushing) {
+        written.future.completeExceptionally(e);
+      }
+    }
+  }
+
+  private boolean isForceDue() {
+    if (forceRequested) {
+      return true;
+    }
+    return durability.mode == Durability.Mode.INTERVAL && System.nanoTime() - nextForceNanos >= 0;
+  }
+
+  /**
+   * Force pending writes and stop the background thread.
+   */
+  void close() {
+    closed = true;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final class Pending {
+    private final long index;
+    private final CompletableFuture<Long> future;
+
+    private Pending(long index, CompletableFuture<Long> future) {
+      this.index = index;
+      this.future = future;
+    }
+  }
+}
@@ -13,7 +13,6 @@
  */
 package org.deephacks.logbuffers;
 
-import javafx.util.Pair;
 import net.openhft.lang.io.VanillaMappedBytes;
 import net.openhft.lang.io.VanillaMappedFile;
 
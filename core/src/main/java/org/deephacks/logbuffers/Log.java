@@ -5,18 +5,40 @@ import net.openhft.chronicle.ExcerptTailer;
 import org.deephacks.vals.DirectBuffer;
 import org.deephacks.vals.Encodable;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Log implements Comparable<Log> {
   private static byte VERSION = 1;
-  private static final byte[] RESERVED_META = new byte[] { VERSION, 0, 0, 0, 0, 0, 0, 0};
+  /** offset of the meta byte holding version in the low nibble and codec in the high nibble */
+  private static final int VERSION_OFFSET = 8;
+  /** timestamp, reserved meta and content length that precede the content */
+  static final int HEADER_LENGTH = 8 + 8 + 4;
+  /** offset of the microseconds within the millisecond timestamp, stored in the reserved meta */
+  static final int MICROS_OFFSET = 8 + 2;
+  /** offset of the record type, stored in the reserved meta */
+  static final int TYPE_OFFSET = 8 + 1;
+  /** offset of the key hash, stored in the reserved meta */
+  static final int KEY_HASH_OFFSET = 8 + 4;
+  /** shared placeholder for logs that are skipped because they did not match a query */
+  static final Log FILTERED = new Log(-1, -1, true);
+  /** cursor that content filters are checked through, one per reading thread */
+  private static final ThreadLocal<LogCursor> FILTER_CURSOR = ThreadLocal.withInitial(LogCursor::new);
   private long index;
   private long localIndex;
   private long timestamp = -1;
-  private byte[] content = null;
-  private ExcerptTailer tailer;
+  private long timestampMicros = -1;
+  /** filled lazily and shared with other reading threads once filled */
+  private volatile byte[] content;
+  private int type = 0;
+  private int keyHash = 0;
+  /** dir that hand out a tailer for the reading thread, null if the log was not read from disk */
+  private Dirs.Dir dir;
   private final boolean paddedEntry;
 
   Log(long timestamp, byte[] content) {
@@ -43,10 +65,10 @@ public class Log implements Comparable<Log> {
     this(localIndex, index, timestamp, content.getBytes(StandardCharsets.UTF_8));
   }
 
-  Log(long localIndex, long index, ExcerptTailer tailer) {
+  Log(long localIndex, long index, Dirs.Dir dir) {
     this.index = index;
     this.localIndex = localIndex;
-    this.tailer = tailer;
+    this.dir = dir;
     this.paddedEntry = false;
   }
 
@@ -56,43 +78,189 @@ public class Log implements Comparable<Log> {
     this.paddedEntry = paddedEntry;
   }
 
+  /**
+   * A log that was just written with the given timestamp.
+   */
+  static Log written(long index, long timestampMicros, byte[] content) {
+    Log log = new Log(-1, index, timestampMicros / 1000, content);
+    log.timestampMicros = timestampMicros;
+    return log;
+  }
+
+  /**
+   * A log that was just written with the given timestamp, record type and key hash.
+   */
+  static Log written(long index, long timestampMicros, int type, int keyHash, byte[] content) {
+    Log log = written(index, timestampMicros, content);
+    log.type = type;
+    log.keyHash = keyHash;
+    return log;
+  }
+
   public static Log paddedEntry(long localIndex, long index) {
     return new Log(localIndex, index, true);
   }
 
+  /**
+   * @return tailer of the calling thread positioned at this log, the dir must be pinned.
+   */
+  private ExcerptTailer tailer() {
+    ExcerptTailer tailer = dir.tailer();
+    tailer.index(localIndex);
+    return tailer;
+  }
+
   public long getTimestamp() {
     if (timestamp == -1) {
-      tailer.index(localIndex);
-      this.timestamp = tailer.readLong();
+      dir.pin();
+      try {
+        this.timestamp = tailer().readLong(0);
+      } finally {
+        dir.unpin();
+      }
     }
     return timestamp;
   }
 
+  /**
+   * @return timestamp in microseconds, the sub-millisecond part is zero unless
+   * the log was written with a clock that have microsecond resolution.
+   */
+  public long getTimestampMicros() {
+    if (timestampMicros == -1) {
+      dir.pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        this.timestampMicros = tailer.readLong(0) * 1000 + tailer.readShort(MICROS_OFFSET);
+      } finally {
+        dir.unpin();
+      }
+    }
+    return timestampMicros;
+  }
+
   public long getIndex() {
     return index;
   }
 
+  /**
+   * @return number of content bytes as stored, which may be compressed.
+   */
+  long getStoredLength() {
+    if (dir == null) {
+      return getContent().length;
+    }
+    dir.pin();
+    try {
+      return tailer().capacity() - HEADER_LENGTH;
+    } finally {
+      dir.unpin();
+    }
+  }
+
+  /**
+   * @return record type given by the writer, 0 if the log was written without a type.
+   */
+  public int getRecordType() {
+    if (dir == null) {
+      return type;
+    }
+    dir.pin();
+    try {
+      return tailer().readUnsignedByte(TYPE_OFFSET);
+    } finally {
+      dir.unpin();
+    }
+  }
+
+  /**
+   * @return key hash given by the writer, 0 if the log was written without a key hash.
+   */
+  public int getKeyHash() {
+    if (dir == null) {
+      return keyHash;
+    }
+    dir.pin();
+    try {
+      return tailer().readInt(KEY_HASH_OFFSET);
+    } finally {
+      dir.unpin();
+    }
+  }
+
   boolean isPaddedEntry() {
     return paddedEntry;
   }
 
   public byte[] getContent() {
-    if (content == null) {
-      tailer.index(localIndex);
+    byte[] bytes = content;
+    if (bytes == null) {
+      dir.pin();
+      try {
+        ExcerptTailer tailer = tailer();
+        int contentSize = tailer.readInt(16);
+        if (codec(tailer) != Codec.NONE) {
+          bytes = decompress(tailer, contentSize);
+        } else {
+          tailer.position(20);
+          bytes = new byte[contentSize];
+          tailer.read(bytes);
+        }
+      } finally {
+        dir.unpin();
+      }
+      // publish the content when filled since logs may be shared between threads
+      content = bytes;
+    }
+    return bytes;
+  }
+
+  public <T extends Encodable> T getVal(Function<DirectBuffer, T> parseFrom) {
+    dir.pin();
+    try {
+      ExcerptTailer tailer = tailer();
       int contentSize = tailer.readInt(16);
+      if (codec(tailer) != Codec.NONE) {
+        return parseFrom.apply(new DirectBuffer(decompress(tailer, contentSize)));
+      }
       tailer.position(20);
-      content = new byte[contentSize];
-      tailer.read(content);
+      DirectBuffer buffer = new DirectBuffer(tailer.address() + tailer.position(), contentSize);
+      return parseFrom.apply(buffer);
+    } finally {
+      dir.unpin();
     }
-    return content;
   }
 
-  public <T extends Encodable> T getVal(Function<DirectBuffer, T> parseFrom) {
-    tailer.index(localIndex);
-    int contentSize = tailer.readInt(16);
-    tailer.position(20);
-    DirectBuffer buffer = new DirectBuffer(tailer.address() + tailer.position(), contentSize);
-    return parseFrom.apply(buffer);
+  /**
+   * @return codec of the log the tailer is positioned at.
+   */
+  static Codec codec(ExcerptTailer tailer) {
+    return Codec.fromId((tailer.readByte(VERSION_OFFSET) >>> 4) & 0x0F);
+  }
+
+  /**
+   * Compressed content is prefixed with its uncompressed length.
+   */
+  private static byte[] decompress(ExcerptTailer tailer, int contentSize) {
+    DirectBuffer compressed = new DirectBuffer(tailer.address() + HEADER_LENGTH, contentSize);
+    int rawLength = compressed.getInt(0);
+    byte[] raw = new byte[rawLength];
+    Lz.decompress(compressed, 4, contentSize - 4, new DirectBuffer(raw), 0, rawLength);
+    return raw;
+  }
+
+  /**
+   * Move a cursor to this log and hand it to a consumer, keeping the memory
+   * of the log mapped until the consumer return.
+   */
+  void accept(LogCursor cursor, Consumer<LogCursor> consumer) {
+    dir.pin();
+    try {
+      cursor.wrap(index, tailer());
+      consumer.accept(cursor);
+    } finally {
+      dir.unpin();
+    }
   }
 
   public String getUtf8() {
@@ -107,6 +275,71 @@ public class Log implements Comparable<Log> {
     }
   }
 
+  /**
+   * Check the header of the log a tailer is positioned at against the filters of
+   * a query, straight from mapped memory.
+   */
+  static boolean matchesHeader(ExcerptTailer tailer, Query query) {
+    if (query.getRecordType() >= 0 && tailer.readUnsignedByte(TYPE_OFFSET) != query.getRecordType()) {
+      return false;
+    }
+    return !query.hasKeyHash() || tailer.readInt(KEY_HASH_OFFSET) == query.getKeyHash();
+  }
+
+  /**
+   * Check the index and content of the log a tailer is positioned at against the
+   * index and content filters of a query. Uncompressed content is checked straight
+   * from mapped memory.
+   */
+  static boolean matchesContent(ExcerptTailer tailer, long index, Query query) {
+    if (query.getIndexFilter() != null && !query.getIndexFilter().test(index)) {
+      return false;
+    }
+    if (query.getContentFilter() == null) {
+      return true;
+    }
+    LogCursor cursor = FILTER_CURSOR.get();
+    cursor.wrap(index, tailer);
+    return matchesContent(cursor, query);
+  }
+
+  /**
+   * Check the index and content a cursor is positioned at against the index and
+   * content filters of a query.
+   */
+  static boolean matchesContent(LogCursor cursor, Query query) {
+    if (query.getIndexFilter() != null && !query.getIndexFilter().test(cursor.getIndex())) {
+      return false;
+    }
+    return query.getContentFilter() == null || query.getContentFilter().test(cursor.getBuffer());
+  }
+
+  /**
+   * Check the header, index and content of this log against the filters of a query.
+   */
+  boolean matches(Query query) {
+    if (query.getIndexFilter() != null && !query.getIndexFilter().test(index)) {
+      return false;
+    }
+    if (query.getRecordType() >= 0 && getRecordType() != query.getRecordType()) {
+      return false;
+    }
+    if (query.hasKeyHash() && getKeyHash() != query.getKeyHash()) {
+      return false;
+    }
+    return query.getContentFilter() == null || query.getContentFilter().test(new DirectBuffer(getContent()));
+  }
+
+  /**
+   * @return true if the log a tailer is positioned at is after the range of a query.
+   */
+  static boolean isAfter(ExcerptTailer tailer, long index, Query query) {
+    if (query.isIndexQuery()) {
+      return index > query.stop();
+    }
+    return tailer.readLong(0) > query.stop();
+  }
+
   boolean greaterThan(Query query) {
     if (query.isIndexQuery()) {
       return index > query.getRange().start();
@@ -115,39 +348,285 @@ public class Log implements Comparable<Log> {
     }
   }
 
-  private int getLength() {
-    return 8 + 8 + 4 + content.length;
+  /**
+   * Write timestamp and reserved meta data of a started excerpt.
+   */
+  private static void writeHeader(ExcerptAppender appender, long micros, AppenderHolder holder) {
+    writeHeader(appender, micros, Codec.NONE, holder);
   }
 
-  Log write(AppenderHolder holder) {
-    long time = getTimestamp();
-    long index = holder.getAppenderIndex(time);
+  private static void writeHeader(ExcerptAppender appender, long micros, Codec codec, AppenderHolder holder) {
+    appender.writeLong(micros / 1000);
+    appender.writeByte(VERSION | (codec.id() << 4));
+    appender.writeByte(holder.type);
+    appender.writeShort((int) (micros % 1000));
+    appender.writeInt(holder.keyHash);
+  }
+
+  /**
+   * Append raw content without creating a log object.
+   *
+   * @return index of the appended log
+   */
+  static long write(long micros, byte[] content, AppenderHolder holder) {
+    if (holder.codec != Codec.NONE) {
+      holder.source.wrap(content);
+      return writeCompressed(micros, holder.source, 0, content.length, holder);
+    }
+    long time = micros / 1000;
     ExcerptAppender appender = holder.getAppender(time);
-    appender.startExcerpt(getLength());
-    appender.writeLong(time);
-    appender.write(RESERVED_META);
+    // starting an excerpt may write a padded entry, so read the index afterwards
+    appender.startExcerpt(HEADER_LENGTH + content.length);
+    long index = holder.getAppenderIndex(time);
+    writeHeader(appender, micros, holder);
     appender.writeInt(content.length);
     appender.write(content);
     appender.finish();
-    this.index = index;
-    return this;
+    holder.appended(index, micros);
+    return index;
   }
 
-  Log write(Encodable e, AppenderHolder holder) {
-    long time = getTimestamp();
-    long index = holder.getAppenderIndex(time);
+  /**
+   * Append a string encoded as UTF-8 directly into the mapped excerpt, without
+   * encoding it to an intermediate byte array.
+   *
+   * @return index of the appended log
+   */
+  static long write(long micros, String content, AppenderHolder holder) {
+    int contentLength = utf8Length(content);
+    if (holder.codec != Codec.NONE) {
+      DirectBuffer scratch = holder.scratch(contentLength);
+      putUtf8(content, scratch);
+      return writeCompressed(micros, scratch, 0, contentLength, holder);
+    }
+    long time = micros / 1000;
     ExcerptAppender appender = holder.getAppender(time);
+    int logLength = HEADER_LENGTH + contentLength;
+    appender.startExcerpt(logLength);
+    long index = holder.getAppenderIndex(time);
+    writeHeader(appender, micros, holder);
+    appender.writeInt(contentLength);
+    holder.target.wrap(appender.address() + HEADER_LENGTH, contentLength);
+    putUtf8(content, holder.target);
+    appender.position(logLength);
+    appender.finish();
+    holder.appended(index, micros);
+    return index;
+  }
+
+  /**
+   * Number of bytes needed to encode a string as UTF-8. Unpaired surrogates
+   * count as one byte since they are replaced with '?', like String.getBytes.
+   */
+  static int utf8Length(String content) {
+    int length = 0;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static void putUtf8(String content, DirectBuffer target) {
+    int pos = 0;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (c < 0x80) {
+        target.putByte(pos++, (byte) c);
+      } else if (c < 0x800) {
+        target.putByte(pos++, (byte) (0xC0 | (c >> 6)));
+        target.putByte(pos++, (byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < content.length() && Character.isLowSurrogate(content.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, content.charAt(++i));
+        target.putByte(pos++, (byte) (0xF0 | (cp >> 18)));
+        target.putByte(pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+        target.putByte(pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+        target.putByte(pos++, (byte) (0x80 | (cp & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        target.putByte(pos++, (byte) '?');
+      } else {
+        target.putByte(pos++, (byte) (0xE0 | (c >> 12)));
+        target.putByte(pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+        target.putByte(pos++, (byte) (0x80 | (c & 0x3F)));
+      }
+    }
+  }
+
+  /**
+   * Append an encodable directly into the mapped excerpt without creating a log object.
+   *
+   * @return index of the appended log
+   */
+  static long write(long micros, Encodable e, AppenderHolder holder) {
     int contentLength = e.getTotalSize();
-    int logLength = 8 + 8 + 4 + contentLength;
+    if (holder.codec != Codec.NONE) {
+      DirectBuffer scratch = holder.scratch(contentLength);
+      e.writeTo(scratch, 0);
+      return writeCompressed(micros, scratch, 0, contentLength, holder);
+    }
+    long time = micros / 1000;
+    ExcerptAppender appender = holder.getAppender(time);
+    int logLength = HEADER_LENGTH + contentLength;
     appender.startExcerpt(logLength);
-    appender.writeLong(time);
-    appender.write(RESERVED_META);
+    long index = holder.getAppenderIndex(time);
+    writeHeader(appender, micros, holder);
     appender.writeInt(contentLength);
-    e.writeTo(new DirectBuffer(appender.address() + 8 + 8 + 4, contentLength), 0);
+    holder.target.wrap(appender.address() + HEADER_LENGTH, contentLength);
+    e.writeTo(holder.target, 0);
     appender.position(logLength);
     appender.finish();
-    this.index = index;
-    return this;
+    holder.appended(index, micros);
+    return index;
+  }
+
+  /**
+   * Append the remaining bytes of a buffer, copied straight from its memory into
+   * the mapped excerpt. The position of the buffer is left untouched.
+   *
+   * @return index of the appended log
+   */
+  static long write(long micros, ByteBuffer content, AppenderHolder holder) {
+    if (!content.isDirect() && !content.hasArray() && holder.codec != Codec.NONE) {
+      DirectBuffer scratch = holder.scratch(content.remaining());
+      content.duplicate().get(scratch.byteArray(), 0, content.remaining());
+      return writeCompressed(micros, scratch, 0, content.remaining(), holder);
+    } else if (!content.isDirect() && !content.hasArray()) {
+      // read-only heap buffers does not expose their memory
+      long time = micros / 1000;
+      ExcerptAppender appender = holder.getAppender(time);
+      int contentLength = content.remaining();
+      appender.startExcerpt(HEADER_LENGTH + contentLength);
+      long index = holder.getAppenderIndex(time);
+      writeHeader(appender, micros, holder);
+      appender.writeInt(contentLength);
+      appender.write(content.duplicate());
+      appender.finish();
+      holder.appended(index, micros);
+      return index;
+    }
+    holder.source.wrap(content);
+    return write(micros, holder.source, content.position(), content.remaining(), holder);
+  }
+
+  /**
+   * Append a slice of a direct buffer, copied straight from its memory into
+   * the mapped excerpt.
+   *
+   * @return index of the appended log
+   */
+  static long write(long micros, DirectBuffer content, int offset, int length, AppenderHolder holder) {
+    if (holder.codec != Codec.NONE) {
+      return writeCompressed(micros, content, offset, length, holder);
+    }
+    long time = micros / 1000;
+    ExcerptAppender appender = holder.getAppender(time);
+    int logLength = HEADER_LENGTH + length;
+    appender.startExcerpt(logLength);
+    long index = holder.getAppenderIndex(time);
+    writeHeader(appender, micros, holder);
+    appender.writeInt(length);
+    holder.target.wrap(appender.address() + HEADER_LENGTH, length);
+    content.getBytes(offset, holder.target, 0, length);
+    appender.position(logLength);
+    appender.finish();
+    holder.appended(index, micros);
+    return index;
+  }
+
+  /**
+   * Compress content straight into the mapped excerpt. Content that does not
+   * get smaller is stored as is.
+   *
+   * @return index of the appended log
+   */
+  private static long writeCompressed(long micros, DirectBuffer content, int offset, int length, AppenderHolder holder) {
+    long time = micros / 1000;
+    ExcerptAppender appender = holder.getAppender(time);
+    int capacity = 4 + Lz.maxCompressedLength(length);
+    appender.startExcerpt(HEADER_LENGTH + capacity);
+    long index = holder.getAppenderIndex(time);
+    holder.target.wrap(appender.address() + HEADER_LENGTH, capacity);
+    int compressed = Lz.compress(content, offset, length, holder.target, 4, holder.lzTable);
+    if (compressed < 0 || 4 + compressed >= length) {
+      writeHeader(appender, micros, Codec.NONE, holder);
+      appender.writeInt(length);
+      content.getBytes(offset, holder.target, 0, length);
+      appender.position(HEADER_LENGTH + length);
+    } else {
+      writeHeader(appender, micros, holder.codec, holder);
+      appender.writeInt(4 + compressed);
+      holder.target.putInt(0, length);
+      appender.position(HEADER_LENGTH + 4 + compressed);
+    }
+    appender.finish();
+    holder.appended(index, micros);
+    return index;
+  }
+
+  /**
+   * Append a batch of raw content sharing the same timestamp. Logs are appended
+   * one at a time, so a failure leaves the logs before it appended.
+   *
+   * @return first and last index of the batch
+   */
+  static Range writeBatch(long micros, List<byte[]> contents, AppenderHolder holder) {
+    long first = -1;
+    long last = -1;
+    try {
+      for (byte[] content : contents) {
+        last = write(micros, content, holder);
+        if (first == -1) {
+          first = last;
+        }
+      }
+    } catch (RuntimeException e) {
+      throw partiallyAppended(first, last, e);
+    }
+    return Range.closed(first, last);
+  }
+
+  /**
+   * Append a batch of encodables sharing the same timestamp. Logs are appended
+   * one at a time, so a failure leaves the logs before it appended.
+   *
+   * @return first and last index of the batch
+   */
+  static Range writeBatch(long micros, Collection<? extends Encodable> encodables, AppenderHolder holder) {
+    long first = -1;
+    long last = -1;
+    try {
+      for (Encodable encodable : encodables) {
+        last = write(micros, encodable, holder);
+        if (first == -1) {
+          first = last;
+        }
+      }
+    } catch (RuntimeException e) {
+      throw partiallyAppended(first, last, e);
+    }
+    return Range.closed(first, last);
+  }
+
+  /**
+   * Tell which part of a failed batch was appended, since retrying the whole
+   * batch would append those logs again.
+   */
+  private static RuntimeException partiallyAppended(long first, long last, RuntimeException e) {
+    if (first == -1) {
+      return e;
+    }
+    return new IllegalStateException("Batch failed after appending indexes " + first + " to " + last, e);
   }
 
   @Override
@@ -180,7 +659,7 @@ public class Log implements Comparable<Log> {
 
   public String toStringDebug() {
     return "Log{" +
-      "time=" + RollingRanges.SECOND_FORMAT.format(new Date(timestamp)) +
+      "time=" + RollingRanges.SECOND_FORMAT.get().format(new Date(timestamp)) +
       ", timestamp=" + getTimestamp() +
       ", index=" + getIndex() +
       '}';
@@ -14,19 +14,31 @@
 package org.deephacks.logbuffers;
 
 import net.openhft.chronicle.ChronicleConfig;
+import org.deephacks.vals.DirectBuffer;
 import org.deephacks.vals.Encodable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static org.deephacks.logbuffers.Dirs.Dir;
+import static org.deephacks.logbuffers.Guavas.checkArgument;
 import static org.deephacks.logbuffers.Guavas.checkNotNull;
 
 /**
@@ -52,15 +64,71 @@ public class LogBuffer {
   /** default path used by log files if not specified */
   private static final String DEFAULT_BASE_PATH = TMP_DIR + "/logbuffer";
 
+  /** directory within the base path where named streams are stored */
+  private static final String STREAMS_DIR = "streams";
+
+  /** buffer that own the threads shared with its named streams, this buffer if not a stream */
+  private final LogBuffer root;
+
+  /** name of this stream, null if not a stream */
+  private final String name;
+
+  /** named streams of a root buffer */
+  private final ConcurrentHashMap<String, LogBuffer> streams = new ConcurrentHashMap<>();
+
+  /** guards lazy creation of threads shared with named streams */
+  private final Object sharedLock = new Object();
+
+  /** open and close intervals in the background, shared by all appenders and streams */
+  private ScheduledThreadPoolExecutor roller;
+
   /** optional executor used only by scheduled tailing */
   private ScheduledExecutorService cachedExecutor;
 
-  /** log writer */
-  private AppenderHolder appenderHolder;
+  /** open and read intervals ahead of queries, shared by all streams */
+  private ExecutorService readAheadExecutor;
+
+  /** bound on chronicles kept open by readers, shared by all streams, null if unbounded */
+  private DirCache dirCache;
+
+  /** number of intervals read ahead of queries, 0 if disabled */
+  private final int readAhead;
+
+  /** log writers, one per stripe */
+  private volatile AppenderHolder[] appenderHolders;
+
+  /** number of chronicles written in parallel within each interval */
+  private final int stripes;
+  /** stripe written by each thread, assigned round robin */
+  private final ThreadLocal<AppenderHolder> stripeWriters = new ThreadLocal<>();
+  private final AtomicInteger nextStripe = new AtomicInteger();
+  private final Codec codec;
+
+  /** source of log timestamps */
+  private final Clock clock;
+
+  /** optional multi-producer write path, size of ring if enabled */
+  private final Optional<Integer> writeRingSize;
+
+  /** drains the multi-producer ring into the appender */
+  private WriteRing writeRing;
+
+  /** max delay and max number of pending writes before a group commit */
+  private final long groupCommitNanos;
+  private final int groupCommitWrites;
+
+  /** how often logs are forced to disk */
+  private final Durability durability;
+
+  /** force asynchronous writes to disk in groups and enforce periodic durability */
+  private volatile Flusher flusher;
 
   /** log reader */
   Dirs dirs;
 
+  /** intervals written to the base path, null if the manifest does not match the buffer */
+  private Manifest manifest;
+
   /** path where log buffer files are stored */
   private File basePath;
 
@@ -72,13 +140,81 @@ public class LogBuffer {
 
   private final ChronicleConfig config;
 
+  /** pool that execute parallel queries */
+  private final ForkJoinPool forkJoinPool;
+
   protected LogBuffer(Builder builder) throws IOException {
+    this.root = this;
+    this.name = null;
     this.basePath = new File(builder.basePath.orElse(DEFAULT_BASE_PATH));
     this.logger = Logger.getLogger(LogBuffer.class.getName() + "." + checkNotNull(basePath + "/writer"));
     this.ranges = builder.ranges;
     this.readersMaxRollingFiles = builder.readersMaxRollingFiles;
+    this.readAhead = builder.readAhead;
     this.dirs = builder.dirs;
-    this.config = builder.config;
+    this.config = builder.config.clone();
+    this.durability = builder.durability;
+    this.config.synchronousMode(durability.mode == Durability.Mode.WRITE);
+    this.writeRingSize = builder.writeRingSize;
+    this.stripes = builder.stripes;
+    this.codec = builder.codec;
+    this.clock = builder.clock;
+    this.groupCommitNanos = builder.groupCommitNanos;
+    this.groupCommitWrites = builder.groupCommitWrites;
+    this.forkJoinPool = builder.forkJoinPool;
+  }
+
+  /**
+   * A named stream that inherit the configuration of a root buffer.
+   */
+  private LogBuffer(LogBuffer root, String name) {
+    this.root = root;
+    this.name = name;
+    this.basePath = new File(new File(root.basePath, STREAMS_DIR), name);
+    this.basePath.mkdirs();
+    this.logger = Logger.getLogger(LogBuffer.class.getName() + "." + basePath + "/writer");
+    this.ranges = root.ranges;
+    this.readersMaxRollingFiles = root.readersMaxRollingFiles;
+    this.readAhead = root.readAhead;
+    this.config = root.config;
+    this.durability = root.durability;
+    this.writeRingSize = root.writeRingSize;
+    this.stripes = root.stripes;
+    this.codec = root.codec;
+    this.clock = root.clock;
+    this.groupCommitNanos = root.groupCommitNanos;
+    this.groupCommitWrites = root.groupCommitWrites;
+    this.forkJoinPool = root.forkJoinPool;
+  }
+
+  /**
+   * Get or create a named stream within the base path of this buffer. Each stream
+   * have its own files and index space but share writer, flusher and background
+   * threads with this buffer, which makes streams cheap compared to separate
+   * buffers. Streams inherit the configuration of this buffer and are closed
+   * with it.
+   * <p/>
+   * Names are shared by all streams of a buffer, asking a stream for a stream
+   * give a stream of the same buffer.
+   *
+   * @param name name of the stream, used as directory name.
+   * @return the stream
+   */
+  public LogBuffer stream(String name) {
+    checkNotNull(name);
+    checkArgument(!name.isEmpty() && !name.startsWith(".") && name.indexOf('/') < 0 && name.indexOf('\\') < 0,
+      "Invalid stream name " + name);
+    if (root != this) {
+      return root.stream(name);
+    }
+    return streams.computeIfAbsent(name, n -> new LogBuffer(this, n));
+  }
+
+  /**
+   * @return name of the named streams of this buffer.
+   */
+  public Set<String> getStreamNames() {
+    return Collections.unmodifiableSet(root.streams.keySet());
   }
 
   // keep dirs lazy to avoid grabbing file descriptors where unnecessary
@@ -86,7 +222,11 @@ public class LogBuffer {
     if (this.dirs == null) {
       synchronized (this) {
         if (dirs == null) {
-          this.dirs = new Dirs(basePath, ranges, config);
+          Dirs dirs = new Dirs(basePath, ranges, config, root.initalizeDirCache());
+          if (readAhead > 0) {
+            dirs.readAhead(readAhead, root::initalizeReadAhead);
+          }
+          this.dirs = dirs;
           this.ranges = this.dirs.ranges;
         }
       }
@@ -96,25 +236,159 @@ public class LogBuffer {
 
   // keep tailers lazy to avoid grabbing file descriptors where unnecessary
   void initalizeAppenderHolder(long time) {
-    if (this.appenderHolder == null) {
+    if (this.appenderHolders == null) {
       synchronized (this) {
-        if (appenderHolder == null) {
-          this.appenderHolder = new AppenderHolder(basePath, Optional.ofNullable(ranges), time, config);
+        if (appenderHolders == null) {
+          AppenderHolder[] holders = new AppenderHolder[stripes];
+          for (int i = 0; i < stripes; i++) {
+            holders[i] = new AppenderHolder(basePath, Optional.ofNullable(ranges), time, config, i, stripes, codec,
+              root.initalizeRoller());
+          }
+          try {
+            this.manifest = Manifest.open(basePath, holders[0].getRanges());
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+          if (manifest != null) {
+            for (AppenderHolder holder : holders) {
+              holder.manifest(manifest);
+            }
+          }
+          if (durability.isPeriodic()) {
+            Flusher flusher = initalizeFlusher();
+            for (AppenderHolder holder : holders) {
+              holder.durability(durability, flusher::requestForce);
+            }
+          }
+          this.appenderHolders = holders;
         }
       }
     }
   }
 
 
+  /**
+   * A single writer is required in order append to file since there is
+   * only one file written to at a given time. Also for generating unique
+   * sequential indexes and sequential timestamps. Timestamps must therefore
+   * be assigned while holding the writer.
+   * <p/>
+   * Striped buffers have one writer per stripe and threads are given stripes
+   * round robin on their first write.
+   */
+  private AppenderHolder initalizeWriter() {
+    AppenderHolder[] holders = appenderHolders;
+    if (holders == null) {
+      initalizeAppenderHolder(clock.currentTimeMicros() / 1000);
+      holders = appenderHolders;
+    }
+    if (stripes == 1) {
+      return holders[0];
+    }
+    AppenderHolder writer = stripeWriters.get();
+    if (writer == null) {
+      writer = holders[Math.floorMod(nextStripe.getAndIncrement(), stripes)];
+      stripeWriters.set(writer);
+    }
+    return writer;
+  }
+
+  // keep the drainer thread lazy, it is only needed once someone writes
+  WriteRing initalizeWriteRing() {
+    if (root != this) {
+      return root.initalizeWriteRing();
+    }
+    if (this.writeRing == null) {
+      synchronized (sharedLock) {
+        if (writeRing == null) {
+          this.writeRing = new WriteRing(writeRingSize.get(), clock);
+        }
+      }
+    }
+    return writeRing;
+  }
+
+  // keep the flusher thread lazy, it is only needed by asynchronous writes and periodic durability
+  Flusher initalizeFlusher() {
+    if (root != this) {
+      return root.initalizeFlusher();
+    }
+    if (this.flusher == null) {
+      synchronized (sharedLock) {
+        if (flusher == null) {
+          this.flusher = new Flusher(this::allAppenderHolders, groupCommitNanos, groupCommitWrites, durability);
+        }
+      }
+    }
+    return flusher;
+  }
+
+  private DirCache initalizeDirCache() {
+    synchronized (sharedLock) {
+      if (dirCache == null && readersMaxRollingFiles.isPresent()) {
+        this.dirCache = new DirCache(readersMaxRollingFiles.get());
+      }
+      return dirCache;
+    }
+  }
+
+  private ScheduledThreadPoolExecutor initalizeRoller() {
+    synchronized (sharedLock) {
+      if (roller == null) {
+        this.roller = AppenderHolder.newRoller(stripes);
+      }
+      return roller;
+    }
+  }
+
+  /**
+   * @return appender holders of this buffer and its streams, null if nothing have been written.
+   */
+  private AppenderHolder[] allAppenderHolders() {
+    AppenderHolder[] holders = appenderHolders;
+    if (streams.isEmpty()) {
+      return holders;
+    }
+    List<AppenderHolder> all = new ArrayList<>();
+    if (holders != null) {
+      Collections.addAll(all, holders);
+    }
+    for (LogBuffer stream : streams.values()) {
+      AppenderHolder[] streamHolders = stream.appenderHolders;
+      if (streamHolders != null) {
+        Collections.addAll(all, streamHolders);
+      }
+    }
+    return all.isEmpty() ? null : all.toArray(new AppenderHolder[all.size()]);
+  }
+
   public static Builder newBuilder() {
     return new Builder();
   }
 
-  synchronized ScheduledExecutorService getCachedExecutor() {
-    if (cachedExecutor == null) {
-      cachedExecutor = Executors.newSingleThreadScheduledExecutor();
+  private ExecutorService initalizeReadAhead() {
+    synchronized (sharedLock) {
+      if (readAheadExecutor == null) {
+        readAheadExecutor = Executors.newSingleThreadExecutor(r -> {
+          Thread thread = new Thread(r, "logbuffer-readahead");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      return readAheadExecutor;
+    }
+  }
+
+  ScheduledExecutorService getCachedExecutor() {
+    if (root != this) {
+      return root.getCachedExecutor();
+    }
+    synchronized (sharedLock) {
+      if (cachedExecutor == null) {
+        cachedExecutor = Executors.newSingleThreadScheduledExecutor();
+      }
+      return cachedExecutor;
     }
-    return cachedExecutor;
   }
 
   /**
@@ -124,17 +398,24 @@ public class LogBuffer {
    * @throws IOException
    */
   public Log write(byte[] content) throws IOException {
-    return internalWrite(new Log(System.currentTimeMillis(), content));
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().write(initalizeWriter(), content);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      long micros = writer.nextTimeMicros(clock);
+      return Log.written(Log.write(micros, content, writer), micros, content);
+    }
   }
 
   public Log write(Encodable encodable) throws IOException {
-    Log log = new Log(System.currentTimeMillis(), (byte[]) null);
-    initalizeAppenderHolder(log.getTimestamp());
-    // single writer is required in order append to file since there is
-    // only one file written to at a given fromTime. Also for generating unique
-    // sequential indexes and sequential timestamps.
-    synchronized (appenderHolder) {
-      return log.write(encodable, appenderHolder);
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().write(initalizeWriter(), encodable);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      long micros = writer.nextTimeMicros(clock);
+      return Log.written(Log.write(micros, encodable, writer), micros, null);
     }
   }
 
@@ -146,16 +427,242 @@ public class LogBuffer {
    * @throws IOException
    */
   public Log write(String content) throws IOException {
-    return internalWrite(new Log(System.currentTimeMillis(), content));
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().write(initalizeWriter(), content.getBytes(StandardCharsets.UTF_8));
+    }
+    return write(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Write a new raw log with a record type and key hash stored in its header,
+   * which queries can filter on without reading the content.
+   *
+   * @param type    record type between 0 and 255, 0 means no type.
+   * @param keyHash hash of the key of the log, 0 means no key.
+   * @param content raw content.
+   * @throws IOException
+   * @see Query#withRecordType(int)
+   * @see Query#withKeyHash(int)
+   */
+  public Log write(int type, int keyHash, byte[] content) throws IOException {
+    checkType(type);
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().write(initalizeWriter(), type, keyHash, content);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      long micros = writer.nextTimeMicros(clock);
+      writer.meta(type, keyHash);
+      try {
+        return Log.written(Log.write(micros, content, writer), micros, type, keyHash, content);
+      } finally {
+        writer.meta(0, 0);
+      }
+    }
+  }
+
+  /**
+   * Write a new encodable log with a record type and key hash stored in its header.
+   *
+   * @see #write(int, int, byte[])
+   */
+  public Log write(int type, int keyHash, Encodable encodable) throws IOException {
+    checkType(type);
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().write(initalizeWriter(), type, keyHash, encodable);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      long micros = writer.nextTimeMicros(clock);
+      writer.meta(type, keyHash);
+      try {
+        return Log.written(Log.write(micros, encodable, writer), micros, type, keyHash, null);
+      } finally {
+        writer.meta(0, 0);
+      }
+    }
+  }
+
+  /**
+   * Write a new utf-8 log with a record type and key hash stored in its header.
+   *
+   * @see #write(int, int, byte[])
+   */
+  public Log write(int type, int keyHash, String content) throws IOException {
+    return write(type, keyHash, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void checkType(int type) {
+    checkArgument(type >= 0 && type <= 255, "record type must be between 0 and 255");
+  }
+
+  /**
+   * Append a new raw log without creating a log object, allocating nothing once
+   * the current interval have been opened.
+   *
+   * @param content raw content.
+   * @return index of the log.
+   * @throws IOException
+   */
+  public long append(byte[] content) throws IOException {
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().append(initalizeWriter(), content);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.write(writer.nextTimeMicros(clock), content, writer);
+    }
+  }
+
+  /**
+   * Append a new log encoded as UTF-8 straight into the log file, without
+   * creating a log object or an intermediate byte array.
+   *
+   * @param content utf-8 content.
+   * @return index of the log.
+   * @throws IOException
+   */
+  public long append(String content) throws IOException {
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().append(initalizeWriter(), content);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.write(writer.nextTimeMicros(clock), content, writer);
+    }
   }
 
-  private Log internalWrite(Log log) throws IOException {
-    initalizeAppenderHolder(log.getTimestamp());
-    // single writer is required in order append to file since there is
-    // only one file written to at a given fromTime. Also for generating unique
-    // sequential indexes and sequential timestamps.
-    synchronized (appenderHolder) {
-      return log.write(appenderHolder);
+  /**
+   * Append a new encodable log without creating a log object.
+   *
+   * @param encodable encoded straight into the log file.
+   * @return index of the log.
+   * @throws IOException
+   */
+  public long append(Encodable encodable) throws IOException {
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().append(initalizeWriter(), encodable);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.write(writer.nextTimeMicros(clock), encodable, writer);
+    }
+  }
+
+  /**
+   * Write a new raw log and get notified when it is durable. The returned future
+   * complete with the index of the log when a background flusher have forced it
+   * to disk, coalescing all pending writes into a single force.
+   *
+   * @param content raw content.
+   * @return future index of the log.
+   * @throws IOException
+   * @see Builder#groupCommit(long, TimeUnit, int)
+   */
+  public CompletableFuture<Long> writeAsync(byte[] content) throws IOException {
+    return initalizeFlusher().register(append(content));
+  }
+
+  /**
+   * Write a new raw log and get notified when it is durable.
+   *
+   * @see #writeAsync(byte[])
+   */
+  public CompletableFuture<Long> writeAsync(String content) throws IOException {
+    return initalizeFlusher().register(append(content));
+  }
+
+  /**
+   * Write a new encodable log and get notified when it is durable.
+   *
+   * @see #writeAsync(byte[])
+   */
+  public CompletableFuture<Long> writeAsync(Encodable encodable) throws IOException {
+    return initalizeFlusher().register(append(encodable));
+  }
+
+  /**
+   * Append the remaining bytes of a buffer as a new raw log. Content is copied
+   * straight from the buffer memory into the log file, without intermediate
+   * heap copies. The position of the buffer is left untouched.
+   *
+   * @param content heap or direct buffer.
+   * @return index of the log.
+   * @throws IOException
+   */
+  public long append(ByteBuffer content) throws IOException {
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().append(initalizeWriter(), content);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.write(writer.nextTimeMicros(clock), content, writer);
+    }
+  }
+
+  /**
+   * Append a slice of a direct buffer as a new raw log. Content is copied straight
+   * from the buffer memory into the log file, without intermediate heap copies.
+   *
+   * @param content buffer that may point to off-heap memory.
+   * @param offset  offset of the first byte in the buffer.
+   * @param length  number of bytes to write.
+   * @return index of the log.
+   * @throws IOException
+   */
+  public long append(DirectBuffer content, int offset, int length) throws IOException {
+    content.boundsCheck(offset, length);
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().append(initalizeWriter(), content, offset, length);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.write(writer.nextTimeMicros(clock), content, offset, length, writer);
+    }
+  }
+
+  /**
+   * Write a batch of raw logs under a single acquisition of the writer. Logs
+   * in the batch share the same timestamp and are given consecutive indexes,
+   * except for padded entries that may occur in between.
+   * <p>
+   * No run of indexes is reserved up front, logs are appended one by one. If
+   * the batch fails part way, the logs before the failure stay appended and the
+   * exception tells their first and last index. Retrying the whole batch will
+   * append those logs again.
+   *
+   * @param contents raw content of each log, in order.
+   * @return the first and last index assigned to the batch.
+   * @throws IOException
+   */
+  public Range writeBatch(List<byte[]> contents) throws IOException {
+    checkArgument(!contents.isEmpty(), "batch is empty");
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().writeBatch(initalizeWriter(), contents);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.writeBatch(writer.nextTimeMicros(clock), contents, writer);
+    }
+  }
+
+  /**
+   * Write a batch of encodable logs under a single acquisition of the writer.
+   * Like {@link #writeBatch(List)}, no run of indexes is reserved up front and
+   * a batch that fails part way leaves the logs before the failure appended.
+   *
+   * @param encodables logs to write, in iteration order.
+   * @return the first and last index assigned to the batch.
+   * @throws IOException
+   */
+  public Range writeBatch(Collection<? extends Encodable> encodables) throws IOException {
+    checkArgument(!encodables.isEmpty(), "batch is empty");
+    if (writeRingSize.isPresent()) {
+      return initalizeWriteRing().writeBatch(initalizeWriter(), encodables);
+    }
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      return Log.writeBatch(writer.nextTimeMicros(clock), encodables, writer);
     }
   }
 
@@ -177,14 +684,125 @@ public class LogBuffer {
 
   /**
    * Stream logs based on the given query. A query can be either time or indexed based.
+   * <p/>
+   * Parallel streams split the query by interval and intervals by index range,
+   * so even a single interval is spread over all cores.
    *
    * @param query
    * @return found logs.
    */
   public Logs find(Query query) {
     initalizeDirs();
-    Dirs.LogIterator it = new Dirs.LogIterator(dirs, query);
-    return new Logs(Guavas.toStream(it, false));
+    query = resolve(query);
+    if (query == null) {
+      return new Logs(Stream.empty());
+    }
+    return new Logs(StreamSupport.stream(new LogSpliterator(dirs, query), false));
+  }
+
+  /**
+   * Scan logs of a query through a cursor that is moved from log to log, without
+   * creating log objects or copying content. The cursor is only valid until the
+   * consumer return and is owned by the calling thread, so concurrent scans each
+   * get their own cursor. Reversed queries move the cursor over log objects.
+   *
+   * @param query
+   * @param consumer called for each log in the query.
+   */
+  public void scan(Query query, Consumer<LogCursor> consumer) {
+    initalizeDirs();
+    query = resolve(query);
+    if (query == null) {
+      return;
+    }
+    LogCursor cursor = new LogCursor();
+    if (query.isReversed()) {
+      Dirs.LogIterator logs = new Dirs.LogIterator(dirs, query);
+      Log log;
+      while ((log = logs.computeNext()) != null) {
+        log.accept(cursor, consumer);
+      }
+      return;
+    }
+    AbstractIterable<Dir> it = dirs.execute(query);
+    Dir dir;
+    while ((dir = it.computeNext()) != null) {
+      if (!dir.scan(query, cursor, consumer)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Count logs and bytes of a query per interval without reading content. Logs
+   * are counted from the index of each interval and only the headers of the
+   * first and last log are read, unless the query filter logs on their header or
+   * content. Intervals covered by a query without filters are summarized once
+   * and then only extended with logs written since, so polling is cheap.
+   *
+   * @return statistics of intervals with matching logs, in order.
+   */
+  public List<LogStats> stats(Query query) {
+    initalizeDirs();
+    query = resolve(query);
+    if (query == null) {
+      return new ArrayList<>();
+    }
+    AbstractIterable<Dir> it = dirs.execute(query.isReversed() ? query.reversed() : query);
+    List<LogStats> stats = new ArrayList<>();
+    Dir dir;
+    while ((dir = it.computeNext()) != null) {
+      LogStats interval = dir.stats(query);
+      if (interval != null) {
+        stats.add(interval);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Stream logs of a query in parallel. The query is split into tasks per
+   * interval and per index sub-range within an interval, bounded by the exact
+   * start and stop of the query.
+   * <p/>
+   * Tasks run in the pool where the terminal operation of the stream is
+   * executed, which is the common pool unless called from another pool. Use
+   * {@link #findParallel(Query, Function)} to run on the pool of this buffer.
+   *
+   * @param query
+   * @return found logs.
+   */
+  public Logs findParallel(Query query) {
+    initalizeDirs();
+    query = resolve(query);
+    if (query == null) {
+      return new Logs(Stream.<Log>empty().parallel());
+    }
+    return new Logs(StreamSupport.stream(new LogSpliterator(dirs, query), true));
+  }
+
+  /**
+   * Stream logs of a query in parallel on the fork join pool of this buffer
+   * and wait for the result.
+   *
+   * @param query
+   * @param function terminal operation of the stream, like a collector or reduction.
+   * @return result of the function.
+   * @see Builder#forkJoinPool(ForkJoinPool)
+   */
+  public <R> R findParallel(Query query, Function<Stream<Log>, R> function) {
+    Stream<Log> logs = findParallel(query).stream();
+    return forkJoinPool.submit(() -> function.apply(logs)).join();
+  }
+
+  /**
+   * Resolve queries for the last logs into the index range of those logs, so
+   * they are read forward like any other query.
+   *
+   * @return the query to execute or null if no logs match.
+   */
+  private Query resolve(Query query) {
+    return query.hasLimit() ? dirs.resolveLast(query) : query;
   }
 
   /**
@@ -236,6 +854,19 @@ public class LogBuffer {
     return tailBuffer.setStartReadTime(startTime);
   }
 
+  /**
+   * @return hits, misses and evictions of chronicles kept open by readers, only
+   * tracked if bounded by {@link Builder#readersMaxRollingFiles(int)}. The bound
+   * is shared by a buffer and its named streams, and so are the statistics.
+   */
+  public CacheStats getReaderCacheStats() {
+    initalizeDirs();
+    if (dirs.cache == null) {
+      return new CacheStats(0, 0, 0, 0, Integer.MAX_VALUE);
+    }
+    return dirs.cache.stats();
+  }
+
   /**
    * @return directory where this log buffer is stored
    */
@@ -249,18 +880,51 @@ public class LogBuffer {
   }
 
   /**
-   * Close this log buffer.
+   * Close this log buffer and its named streams. Closing a stream only release
+   * its files, shared threads are stopped when the buffer it belong to is closed.
    *
    * @throws IOException
    */
   public synchronized void close() throws IOException {
-    if (appenderHolder != null) {
-      synchronized (appenderHolder) {
-        if (appenderHolder != null) {
+    if (writeRing != null) {
+      // let the drainer finish appending before closing the appender
+      writeRing.close();
+    }
+    if (flusher != null) {
+      // complete pending asynchronous writes
+      flusher.close();
+    }
+    for (LogBuffer stream : streams.values()) {
+      stream.close();
+    }
+    if (root != this) {
+      root.streams.remove(name, this);
+      if (root.writeRing != null) {
+        // slots of the shared ring may still be published for the appenders of this stream
+        root.writeRing.flush();
+      }
+    }
+    if (appenderHolders != null) {
+      for (AppenderHolder appenderHolder : appenderHolders) {
+        synchronized (appenderHolder) {
           appenderHolder.close();
         }
       }
     }
+    if (manifest != null) {
+      manifest.close();
+    }
+    if (roller != null) {
+      roller.shutdown();
+      try {
+        roller.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (readAheadExecutor != null) {
+      readAheadExecutor.shutdownNow();
+    }
     if (dirs != null) {
       synchronized (dirs) {
         for (Class<?> cls : tails.keySet()) {
@@ -282,13 +946,70 @@ public class LogBuffer {
    * @throws IOException
    */
   public long getWriteIndex() throws IOException {
-    long now = System.currentTimeMillis();
-    initalizeAppenderHolder(now);
-    synchronized (appenderHolder) {
-      return appenderHolder.getAppenderIndex(now);
+    AppenderHolder writer = initalizeWriter();
+    synchronized (writer) {
+      // same clamped time as the next write, a clock that went backwards would otherwise
+      // give the index of an earlier interval
+      return writer.getAppenderIndex(writer.peekTimeMicros(clock) / 1000);
     }
   }
 
+  /**
+   * Index of the last log that have been forced to disk by this log buffer, according
+   * to the durability policy or by asynchronous writes. Logs up to and including the
+   * index survive a crash of the machine.
+   * <p/>
+   * Stripes are forced separately and their indexes are not ordered by time, so a
+   * striped buffer give the lowest durable index of its stripes.
+   *
+   * @return durable index or -1 if nothing written by this log buffer have been forced yet.
+   * @see Builder#durability(Durability)
+   */
+  public long getDurableIndex() {
+    AppenderHolder[] holders = appenderHolders;
+    if (holders == null) {
+      return -1;
+    }
+    long durableIndex = Long.MAX_VALUE;
+    for (AppenderHolder holder : holders) {
+      durableIndex = Math.min(durableIndex, holder.getDurableIndex());
+    }
+    return durableIndex;
+  }
+
+  /**
+   * Durable index of each stripe for tails that only process durable logs. Stripes
+   * that have not been written by this log buffer give Long.MAX_VALUE since logs
+   * written by another process are considered durable.
+   *
+   * @return durable index of each stripe or null if nothing have been written.
+   */
+  long[] getDurableIndexes() {
+    AppenderHolder[] holders = appenderHolders;
+    if (holders == null) {
+      return null;
+    }
+    long[] durableIndexes = new long[holders.length];
+    for (int i = 0; i < holders.length; i++) {
+      durableIndexes[i] = holders[i].getLastIndex() == -1 ? Long.MAX_VALUE : holders[i].getDurableIndex();
+    }
+    return durableIndexes;
+  }
+
+  /**
+   * @return number of chronicles written in parallel within each interval.
+   */
+  int getStripes() {
+    return stripes;
+  }
+
+  /**
+   * @return true if this log buffer have written logs since it was opened.
+   */
+  boolean isWriting() {
+    return appenderHolders != null;
+  }
+
   /**
    * Cancel the periodic tail task.
    */
@@ -323,6 +1044,8 @@ public class LogBuffer {
   }
 
   private LogBufferTail putIfAbsent(TailSchedule schedule) throws IOException {
+    checkArgument(!schedule.isDurableOnly() || durability.isForced(),
+      "durable only tails require a durability policy that force logs to disk, was " + durability);
     Tail tail = schedule.getTail();
     LogBufferTail logBufferTail = tails.get(tail.getClass());
     if (logBufferTail == null || !schedule.isInitalized()) {
@@ -337,6 +1060,15 @@ public class LogBuffer {
     private ChronicleConfig config = ChronicleConfig.LARGE.clone();
     private Optional<String> basePath = Optional.empty();
     private Optional<Integer> readersMaxRollingFiles = Optional.empty();
+    private int readAhead = 0;
+    private Optional<Integer> writeRingSize = Optional.empty();
+    private int stripes = 1;
+    private Codec codec = Codec.NONE;
+    private Clock clock = Clock.system();
+    private long groupCommitNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    private int groupCommitWrites = 1024;
+    private Durability durability = Durability.none();
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
     private Dirs dirs;
     private RollingRanges ranges;
     private Builder() {
@@ -348,13 +1080,137 @@ public class LogBuffer {
       return this;
     }
 
+    /**
+     * @deprecated use {@link #durability(Durability)} instead, true is the same
+     * as {@link Durability#perWrite()} and false as {@link Durability#none()}.
+     */
+    @Deprecated
     public Builder synchronousMode(boolean synchronousMode) {
-      config.synchronousMode(synchronousMode);
+      this.durability = synchronousMode ? Durability.perWrite() : Durability.none();
+      return this;
+    }
+
+    /**
+     * How often written logs are forced to disk. Default is to leave it to the
+     * operating system.
+     *
+     * @see LogBuffer#getDurableIndex()
+     */
+    public Builder durability(Durability durability) {
+      this.durability = checkNotNull(durability);
       return this;
     }
 
+    /**
+     * Pool that execute parallel queries. Default is the common pool. The pool
+     * is not shut down when the buffer is closed.
+     *
+     * @see LogBuffer#findParallel(Query, Function)
+     */
+    public Builder forkJoinPool(ForkJoinPool forkJoinPool) {
+      this.forkJoinPool = checkNotNull(forkJoinPool);
+      return this;
+    }
+
+    /**
+     * Let concurrent writers claim slots in a bounded ring instead of contending
+     * for the appender lock. A single drainer thread append logs in claim order.
+     *
+     * @param ringSize number of slots in the ring, must be a power of two.
+     */
+    public Builder multiProducer(int ringSize) {
+      checkArgument(ringSize > 0 && Integer.bitCount(ringSize) == 1, "ringSize must be a power of two");
+      this.writeRingSize = Optional.of(ringSize);
+      return this;
+    }
+
+    /**
+     * Write each interval as a number of chronicles, each with its own writer, so
+     * that writer threads do not contend on a single appender. Threads are given
+     * stripes round robin on their first write. Each stripe own an equal share of the
+     * indexes of an interval, so indexes are unique but not ordered by time across
+     * stripes. Queries merge the stripes into a single stream ordered by timestamp
+     * and index.
+     * <p/>
+     * Tails process the merged stripes and resume each stripe from its own last seen
+     * log. Stripes are forced to disk separately and {@link LogBuffer#getDurableIndex()}
+     * give the lowest durable index of the stripes. Queries for the last logs take the
+     * most recent logs of the merged stripes.
+     *
+     * @param stripes number of writers, 1 disable striping.
+     */
+    public Builder stripes(int stripes) {
+      checkArgument(stripes > 0, "stripes must be positive");
+      this.stripes = stripes;
+      return this;
+    }
+
+    /**
+     * Compress the content of each written log, default is no compression. The
+     * codec is recorded with each log so buffers can be read regardless of the
+     * codec they were written with. Content that does not get smaller is stored
+     * uncompressed.
+     */
+    public Builder codec(Codec codec) {
+      this.codec = checkNotNull(codec);
+      return this;
+    }
+
+    /**
+     * Source of log timestamps, default is the system clock with millisecond
+     * resolution. The clock is read while holding the writer so timestamps
+     * never decrease, even if the clock does.
+     *
+     * @see Clock#micros()
+     * @see Clock#coarse(long, TimeUnit)
+     */
+    public Builder clock(Clock clock) {
+      this.clock = checkNotNull(clock);
+      return this;
+    }
+
+    /**
+     * Configure how asynchronous writes are forced to disk. All pending writes
+     * are forced together when the delay elapse or when the number of pending
+     * writes is reached, whichever comes first. Default is 1 millisecond or
+     * 1024 writes.
+     *
+     * @param delay     max time a write wait for a force.
+     * @param unit      unit of the delay.
+     * @param maxWrites number of pending writes that trigger an early force.
+     */
+    public Builder groupCommit(long delay, TimeUnit unit, int maxWrites) {
+      checkArgument(delay > 0, "delay must be positive");
+      checkArgument(maxWrites > 0, "maxWrites must be positive");
+      this.groupCommitNanos = unit.toNanos(delay);
+      this.groupCommitWrites = maxWrites;
+      return this;
+    }
+
+    /**
+     * Maximum number of interval chronicles that readers keep open and mapped.
+     * The least recently used are closed when the bound is exceeded and reopened
+     * on demand. Default is to keep every chronicle that have been read open.
+     * The bound is shared by the buffer and all of its named streams.
+     *
+     * @see LogBuffer#getReaderCacheStats()
+     */
     public Builder readersMaxRollingFiles(int readersMaxRollingFiles) {
-      this.readersMaxRollingFiles = Optional.ofNullable(readersMaxRollingFiles);
+      checkArgument(readersMaxRollingFiles > 0, "readersMaxRollingFiles must be positive");
+      this.readersMaxRollingFiles = Optional.of(readersMaxRollingFiles);
+      return this;
+    }
+
+    /**
+     * Number of intervals that are opened and read into the page cache in the
+     * background ahead of the interval a query is reading. Default is 0, which
+     * disable read ahead. Intervals read ahead count against
+     * {@link #readersMaxRollingFiles(int)} and are not opened when that many
+     * chronicles are already open.
+     */
+    public Builder readAhead(int intervals) {
+      checkArgument(intervals >= 0, "readAhead must not be negative");
+      this.readAhead = intervals;
       return this;
     }
 
@@ -425,6 +1281,7 @@ public class LogBuffer {
     }
 
     public LogBuffer build() throws IOException {
+      checkArgument(stripes == 1 || !writeRingSize.isPresent(), "multiProducer cannot be combined with stripes");
       return new LogBuffer(this);
     }
   }
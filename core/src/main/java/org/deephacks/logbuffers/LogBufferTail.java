@@ -18,11 +18,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * The actual process that watch the log buffer for new logs.
@@ -37,15 +39,30 @@ class LogBufferTail {
   protected LogBuffer logBuffer;
   protected Tail tail;
   protected final Index readIndex;
+  /** last seen log of each stripe, null if the buffer is not striped */
+  private final Index[] stripeIndexes;
   private ScheduledFuture<?> scheduledFuture;
   private String tailId;
+  private final boolean durableOnly;
 
   LogBufferTail(LogBuffer logBuffer, TailSchedule schedule) throws IOException {
     this.logBuffer = logBuffer;
     logBuffer.initalizeDirs();
     this.tail = schedule.getTail();
+    this.durableOnly = schedule.isDurableOnly();
     this.readIndex = Index.binaryIndex(getTailId());
     long[] lastSeen = this.readIndex.getLastSeen();
+    int stripes = logBuffer.getStripes();
+    this.stripeIndexes = stripes > 1 ? new Index[stripes] : null;
+    for (int i = 0; i < stripes && stripes > 1; i++) {
+      String path = StripedDir.chronicleName(getTailId(), i, stripes);
+      boolean exists = new File(path).exists();
+      stripeIndexes[i] = Index.binaryIndex(path);
+      if (!exists) {
+        // resume every stripe from where the tail was
+        stripeIndexes[i].writeLastSeen(lastSeen[0], lastSeen[1]);
+      }
+    }
     if (lastSeen[1] == -1 || schedule.getStarTime().isPresent()) {
       setStartReadTime(schedule.getStarTime().orElse(0L));
     }
@@ -67,18 +84,23 @@ class LogBufferTail {
    * @throws IOException
    */
   TailForwardResult forward() throws IOException {
+    if (stripeIndexes != null) {
+      return forwardStriped();
+    }
     long[] seen = readIndex.getLastSeen();
     long seenTime = seen[0];
     long seenIndex = seen[1];
     Dirs.LogIterator it;
+    // the durable index is only known for logs written by this log buffer
+    long maxIndex = durableOnly && logBuffer.isWriting() ? logBuffer.getDurableIndex() : Long.MAX_VALUE;
 
     if (seenIndex == -1) {
       long now = System.currentTimeMillis();
       logger.debug("forwardTime {} {}", seenTime, now);
-      it = new Dirs.LogIterator(logBuffer.dirs, Query.closedTime(seenTime, now));
+      it = new Dirs.LogIterator(logBuffer.dirs, Query.closedTime(seenTime, now), maxIndex);
     } else {
       logger.debug("forwardIndex atLeast {}", seenIndex + 1);
-      it = new Dirs.LogIterator(logBuffer.dirs, Query.atLeastIndex(seenIndex + 1));
+      it = new Dirs.LogIterator(logBuffer.dirs, Query.atLeastIndex(seenIndex + 1), maxIndex);
     }
     try {
       tail.process(new Logs(Guavas.toStream(it, false)));
@@ -93,6 +115,84 @@ class LogBufferTail {
     return new TailForwardResult();
   }
 
+  /**
+   * Indexes are not ordered by time across stripes, so each stripe resume from its
+   * own last seen log while the tail process the stripes merged by timestamp.
+   */
+  private TailForwardResult forwardStriped() throws IOException {
+    RollingRanges ranges = logBuffer.dirs.ranges;
+    int stripes = stripeIndexes.length;
+    long[] seenTimes = new long[stripes];
+    long[] seenIndexes = new long[stripes];
+    long startIndex = Long.MAX_VALUE;
+    for (int i = 0; i < stripes; i++) {
+      long[] seen = stripeIndexes[i].getLastSeen();
+      seenTimes[i] = seen[0];
+      seenIndexes[i] = seen[1];
+      startIndex = Math.min(startIndex, seen[1] == -1 ? ranges.startIndexForTime(seen[0]) : seen[1] + 1);
+    }
+    // the durable index is only known for logs written by this log buffer
+    long[] durableIndexes = durableOnly && logBuffer.isWriting() ? logBuffer.getDurableIndexes() : null;
+    logger.debug("forwardStriped atLeast {}", startIndex);
+    Dirs.LogIterator it = new Dirs.LogIterator(logBuffer.dirs, Query.atLeastIndex(startIndex));
+    Log[] lastProcessed = new Log[stripes + 1];
+    boolean[] withheld = new boolean[stripes];
+    Stream<Log> unseen = Guavas.toStream(it, false).filter(log -> {
+      int stripe = StripedDir.stripeOf(ranges, log.getIndex(), stripes);
+      if (seenIndexes[stripe] == -1 ? log.getTimestamp() < seenTimes[stripe] : log.getIndex() <= seenIndexes[stripe]) {
+        return false;
+      }
+      if (durableIndexes != null && log.getIndex() > durableIndexes[stripe]) {
+        withheld[stripe] = true;
+        return false;
+      }
+      lastProcessed[stripe] = log;
+      lastProcessed[stripes] = log;
+      return true;
+    });
+    try {
+      tail.process(new Logs(unseen));
+      // only write the read indexes if tail was successful
+      Log lastScanned = it.getLastProcessed();
+      for (int i = 0; i < stripes; i++) {
+        if (lastProcessed[i] != null) {
+          stripeIndexes[i].writeLastSeen(lastProcessed[i].getTimestamp(), lastProcessed[i].getIndex());
+        } else if (lastScanned != null && !withheld[i]) {
+          advance(i, seenTimes[i], seenIndexes[i], lastScanned, ranges);
+        }
+      }
+      if (lastProcessed[stripes] != null) {
+        readIndex.writeLastSeen(lastProcessed[stripes].getTimestamp(), lastProcessed[stripes].getIndex());
+      }
+    } catch (Throwable e) {
+      logger.warn("Tail failed to process logs", e);
+    }
+    return new TailForwardResult();
+  }
+
+  /**
+   * Move a stripe that had nothing to process up to the interval of the last scanned
+   * log, since every earlier log of the stripe have been scanned. Otherwise stripes
+   * that are never written keep the next forward scanning from their old position.
+   */
+  private void advance(int stripe, long seenTime, long seenIndex, Log lastScanned, RollingRanges ranges) {
+    int stripes = stripeIndexes.length;
+    if (seenIndex == -1) {
+      // logs of the stripe before the seen time stay filtered within the interval
+      long time = Math.max(seenTime, ranges.startTimeForIndex(lastScanned.getIndex()));
+      if (time != seenTime) {
+        stripeIndexes[stripe].writeLastSeen(time, -1);
+      }
+    } else {
+      // just before the first index of the stripe in the interval
+      long index = ranges.startIndexForIndex(lastScanned.getIndex())
+        + StripedDir.stripeOffset(ranges, stripe, stripes) - 1;
+      if (index > seenIndex) {
+        stripeIndexes[stripe].writeLastSeen(seenTime, index);
+      }
+    }
+  }
+
   /**
    * Forwards the log processing periodically by notifying the tail each round.
    *
@@ -125,6 +225,11 @@ class LogBufferTail {
 
   Long setStartReadTime(long time) throws IOException {
     readIndex.writeLastSeen(time, -1);
+    if (stripeIndexes != null) {
+      for (Index stripeIndex : stripeIndexes) {
+        stripeIndex.writeLastSeen(time, -1);
+      }
+    }
     return time;
   }
 
@@ -0,0 +1,140 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import net.openhft.chronicle.ExcerptTailer;
+import org.deephacks.vals.DirectBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A mutable view of the log a scan is positioned at. The same cursor is moved
+ * from log to log, so reading logs through a cursor does not create any
+ * objects.
+ * <p/>
+ * The content buffer point straight into mapped memory of the chronicle, or to
+ * memory owned by the cursor if the log is compressed. The view is only valid
+ * until the consumer of the scan return and must be copied to be kept.
+ *
+ * @see LogBuffer#scan(Query, java.util.function.Consumer)
+ */
+public final class LogCursor {
+  private long index;
+  private long timestamp;
+  private int micros;
+  private int type;
+  private int keyHash;
+  private int length;
+  private final DirectBuffer content = new DirectBuffer(0, 0);
+  /** view over the compressed content of a log */
+  private final DirectBuffer compressed = new DirectBuffer(0, 0);
+  /** memory for decompressed content, grown on demand */
+  private ByteBuffer decompressed = ByteBuffer.allocateDirect(0);
+  private final DirectBuffer decompressedView = new DirectBuffer(decompressed);
+
+  LogCursor() {
+  }
+
+  /**
+   * Move the cursor to the log a tailer is positioned at.
+   */
+  void wrap(long index, ExcerptTailer tailer) {
+    this.index = index;
+    this.timestamp = tailer.readLong(0);
+    this.micros = tailer.readShort(Log.MICROS_OFFSET);
+    this.type = tailer.readUnsignedByte(Log.TYPE_OFFSET);
+    this.keyHash = tailer.readInt(Log.KEY_HASH_OFFSET);
+    int contentSize = tailer.readInt(16);
+    long address = tailer.address() + Log.HEADER_LENGTH;
+    if (Log.codec(tailer) == Codec.NONE) {
+      this.length = contentSize;
+      content.wrap(address, contentSize);
+      return;
+    }
+    // compressed content is prefixed with its uncompressed length
+    compressed.wrap(address, contentSize);
+    this.length = compressed.getInt(0);
+    if (decompressed.capacity() < length) {
+      decompressed = ByteBuffer.allocateDirect(Math.max(length, decompressed.capacity() * 2));
+      decompressedView.wrap(decompressed);
+    }
+    content.wrap(decompressedView.addressOffset(), length);
+    Lz.decompress(compressed, 4, contentSize - 4, content, 0, length);
+  }
+
+  public long getIndex() {
+    return index;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return timestamp in microseconds.
+   */
+  public long getTimestampMicros() {
+    return timestamp * 1000 + micros;
+  }
+
+  /**
+   * @return record type given by the writer, 0 if the log was written without a type.
+   */
+  public int getRecordType() {
+    return type;
+  }
+
+  /**
+   * @return key hash given by the writer, 0 if the log was written without a key hash.
+   */
+  public int getKeyHash() {
+    return keyHash;
+  }
+
+  /**
+   * @return length of the (uncompressed) content.
+   */
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return view of the content, valid until the consumer return.
+   */
+  public DirectBuffer getBuffer() {
+    return content;
+  }
+
+  /**
+   * @return a copy of the content.
+   */
+  public byte[] getContent() {
+    byte[] bytes = new byte[length];
+    content.getBytes(0, bytes);
+    return bytes;
+  }
+
+  /**
+   * @return a copy of the content decoded as UTF-8.
+   */
+  public String getUtf8() {
+    return new String(getContent(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return "LogCursor{index=" + index + ", timestamp=" + timestamp + ", length=" + length + '}';
+  }
+}
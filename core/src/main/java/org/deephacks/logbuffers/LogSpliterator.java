@@ -0,0 +1,227 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.Dirs.Dir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the logs of a query that split by interval and, within an
+ * interval, by index sub-range so that parallel streams spread even a single
+ * interval over all cores.
+ * <p/>
+ * Until it is split the spliterator stream logs lazily just like the log
+ * iterator, seeing intervals that are created while streaming. The first split
+ * resolve the intervals of the query and snapshot the last written index of
+ * each, except for the last sub-range of an interval which stay open ended.
+ * <p/>
+ * Sizes are estimated from index ranges since padded entries, time bounds and
+ * header filters are only known when logs are read, so SIZED is never reported.
+ * Striped intervals merge their stripes by timestamp and are only split by
+ * interval. Reversed queries are never split.
+ */
+final class LogSpliterator implements Spliterator<Log> {
+  /** do not split index ranges smaller than this */
+  static final long MIN_SPLIT_SIZE = 1024;
+
+  private final Dirs dirs;
+  private final Query query;
+  /** used when streaming before any split */
+  private Dirs.LogIterator iterator;
+  /** resolved sub-ranges, null until the first split */
+  private List<Segment> segments;
+  /** current position in segments */
+  private int current;
+  private AbstractIterable<Log> logs;
+
+  LogSpliterator(Dirs dirs, Query query) {
+    this.dirs = dirs;
+    this.query = query;
+  }
+
+  private LogSpliterator(Query query, List<Segment> segments) {
+    this.dirs = null;
+    this.query = query;
+    this.segments = segments;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Log> action) {
+    if (segments == null) {
+      if (iterator == null) {
+        iterator = new Dirs.LogIterator(dirs, query);
+      }
+      Log log = iterator.computeNext();
+      if (log == null) {
+        return false;
+      }
+      action.accept(log);
+      return true;
+    }
+    while (current < segments.size()) {
+      Segment segment = segments.get(current);
+      if (logs == null) {
+        logs = segment.iterate(query);
+      }
+      Log log = logs.computeNext();
+      if (log == null || log.getIndex() > segment.stop || (!log.isIn(query) && log.greaterThan(query))) {
+        // end of segment or past the query
+        logs = null;
+        current++;
+      } else if (log.isIn(query)) {
+        action.accept(log);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Spliterator<Log> trySplit() {
+    if (iterator != null || logs != null || query.isReversed()) {
+      // already streaming or walking backward
+      return null;
+    }
+    if (segments == null) {
+      segments = resolve();
+    }
+    int remaining = segments.size() - current;
+    if (remaining > 1) {
+      int mid = current + remaining / 2;
+      List<Segment> prefix = new ArrayList<>(segments.subList(current, mid));
+      segments = new ArrayList<>(segments.subList(mid, segments.size()));
+      current = 0;
+      return new LogSpliterator(query, prefix);
+    }
+    if (remaining == 1) {
+      Segment prefix = segments.get(current).split(query);
+      if (prefix != null) {
+        List<Segment> split = new ArrayList<>();
+        split.add(prefix);
+        return new LogSpliterator(query, split);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    if (iterator != null || query.isReversed()) {
+      return Long.MAX_VALUE;
+    }
+    if (segments == null) {
+      segments = resolve();
+    }
+    long size = 0;
+    for (int i = current; i < segments.size(); i++) {
+      size += segments.get(i).estimateSize(query);
+      if (size < 0) {
+        return Long.MAX_VALUE;
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+
+  private List<Segment> resolve() {
+    List<Segment> segments = new ArrayList<>();
+    AbstractIterable<Dir> it = dirs.execute(query);
+    Dir dir;
+    while ((dir = it.computeNext()) != null) {
+      segments.add(new Segment(dir));
+    }
+    return segments;
+  }
+
+  /**
+   * Logs of an interval between two indexes.
+   */
+  private static final class Segment {
+    private final Dir dir;
+    /** first index, -1 until the segment is split */
+    private long start = -1;
+    /** last index, inclusive */
+    private long stop = Long.MAX_VALUE;
+
+    private Segment(Dir dir) {
+      this.dir = dir;
+    }
+
+    private Segment(Dir dir, long start, long stop) {
+      this.dir = dir;
+      this.start = start;
+      this.stop = stop;
+    }
+
+    private AbstractIterable<Log> iterate(Query query) {
+      return start == -1 ? dir.iterateFirst(query) : dir.iterate(start, query);
+    }
+
+    /**
+     * Split off the first half of the segment.
+     *
+     * @return the first half or null if the segment is too small or cannot be split.
+     */
+    private Segment split(Query query) {
+      if (dir instanceof StripedDir) {
+        // stripes are merged by timestamp, index ranges does not follow time
+        return null;
+      }
+      long first = start;
+      if (first == -1) {
+        // exact bounds of the query within the interval
+        first = firstIndex(query);
+        stop = Math.min(stop, Dirs.findStopIndex(dir, query));
+      }
+      long last = lastIndex(query);
+      if (last - first < 2 * MIN_SPLIT_SIZE) {
+        return null;
+      }
+      long mid = first + (last - first) / 2;
+      this.start = mid + 1;
+      return new Segment(dir, first, mid);
+    }
+
+    private long estimateSize(Query query) {
+      long first = start == -1 ? dir.getIndexRange().start() : start;
+      if (query.isIndexQuery()) {
+        first = Math.max(first, query.start());
+      }
+      return Math.max(0, lastIndex(query) - first + 1);
+    }
+
+    private long firstIndex(Query query) {
+      if (query.isTimeQuery()) {
+        return Dirs.findFirstIndex(dir, query);
+      }
+      return Math.max(query.start(), dir.getIndexRange().start());
+    }
+
+    private long lastIndex(Query query) {
+      long last = Math.min(stop, dir.getLastWrittenIndex());
+      if (query.isIndexQuery()) {
+        last = Math.min(last, query.stop());
+      }
+      return last;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import java.util.Collection;
+
+/**
+ * Number of logs, bytes and bounds of the logs within an interval that match a
+ * query, summarized from the index of the interval without reading content.
+ *
+ * @see LogBuffer#stats(Query)
+ */
+public final class LogStats {
+  private final Range interval;
+  private final long count;
+  private final long bytes;
+  private final long firstIndex;
+  private final long lastIndex;
+  private final long firstTimestamp;
+  private final long lastTimestamp;
+
+  LogStats(Range interval, long count, long bytes, long firstIndex, long lastIndex, long firstTimestamp, long lastTimestamp) {
+    this.interval = interval;
+    this.count = count;
+    this.bytes = bytes;
+    this.firstIndex = firstIndex;
+    this.lastIndex = lastIndex;
+    this.firstTimestamp = firstTimestamp;
+    this.lastTimestamp = lastTimestamp;
+  }
+
+  /**
+   * Combine statistics of intervals, or of stripes within an interval.
+   *
+   * @return null if there are no statistics.
+   */
+  public static LogStats sum(Collection<LogStats> stats) {
+    LogStats sum = null;
+    for (LogStats s : stats) {
+      sum = sum == null ? s : sum.plus(s);
+    }
+    return sum;
+  }
+
+  LogStats plus(LogStats other) {
+    return new LogStats(
+      Range.closed(Math.min(interval.start(), other.interval.start()), Math.max(interval.stop(), other.interval.stop())),
+      count + other.count,
+      bytes + other.bytes,
+      Math.min(firstIndex, other.firstIndex),
+      Math.max(lastIndex, other.lastIndex),
+      Math.min(firstTimestamp, other.firstTimestamp),
+      Math.max(lastTimestamp, other.lastTimestamp));
+  }
+
+  /**
+   * @return time range of the interval, or the intervals if combined.
+   */
+  public Range getInterval() {
+    return interval;
+  }
+
+  /**
+   * @return number of logs.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return bytes of content as stored, after compression, excluding log headers.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getFirstIndex() {
+    return firstIndex;
+  }
+
+  public long getLastIndex() {
+    return lastIndex;
+  }
+
+  public long getFirstTimestamp() {
+    return firstTimestamp;
+  }
+
+  public long getLastTimestamp() {
+    return lastTimestamp;
+  }
+
+  @Override
+  public String toString() {
+    return "LogStats{" +
+      "interval=" + interval +
+      ", count=" + count +
+      ", bytes=" + bytes +
+      ", firstIndex=" + firstIndex +
+      ", lastIndex=" + lastIndex +
+      ", firstTimestamp=" + firstTimestamp +
+      ", lastTimestamp=" + lastTimestamp +
+      '}';
+  }
+}
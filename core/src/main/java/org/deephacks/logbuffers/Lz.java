@@ -0,0 +1,202 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.deephacks.vals.DirectBuffer;
+
+import java.util.Arrays;
+
+/**
+ * Pure java LZ77 compression using the LZ4 block format. A block is a sequence
+ * of a token, literals, a 2 byte match offset and a match length. The last
+ * sequence only have literals.
+ * <p/>
+ * Source and target are direct buffers so content can be compressed from heap
+ * or off-heap memory straight into a mapped excerpt and back.
+ */
+final class Lz {
+  private static final int MIN_MATCH = 4;
+  /** the last literals are never part of a match */
+  private static final int LAST_LITERALS = 5;
+  /** no match may start this close to the end */
+  private static final int MF_LIMIT = 12;
+  private static final int MAX_DISTANCE = 0xFFFF;
+  static final int MAX_HASH_LOG = 12;
+  /** step faster through content that does not compress */
+  private static final int SKIP_STRENGTH = 6;
+
+  private Lz() {
+  }
+
+  /**
+   * @return a hash table that can be reused between compressions by a single thread.
+   */
+  static int[] newTable() {
+    return new int[1 << MAX_HASH_LOG];
+  }
+
+  /**
+   * @return max number of bytes needed to compress content of a certain length.
+   */
+  static int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * Compress content into the target.
+   *
+   * @param table reusable hash table of at least 1 << MAX_HASH_LOG entries.
+   * @return number of bytes written or -1 if the target is too small.
+   */
+  static int compress(DirectBuffer src, int srcOffset, int length, DirectBuffer dst, int dstOffset, int[] table) {
+    int end = srcOffset + length;
+    int dstEnd = dst.capacity();
+    int dp = dstOffset;
+    int anchor = srcOffset;
+    if (length > MF_LIMIT) {
+      int hashLog = Math.min(MAX_HASH_LOG, Math.max(8, 32 - Integer.numberOfLeadingZeros(length)));
+      Arrays.fill(table, 0, 1 << hashLog, -1);
+      int matchLimit = end - LAST_LITERALS;
+      int mfLimit = end - MF_LIMIT;
+      int sp = srcOffset;
+      while (sp < mfLimit) {
+        int sequence = src.getInt(sp);
+        int h = hash(sequence, hashLog);
+        int ref = table[h];
+        table[h] = sp;
+        if (ref < 0 || sp - ref > MAX_DISTANCE || src.getInt(ref) != sequence) {
+          sp += 1 + ((sp - anchor) >>> SKIP_STRENGTH);
+          continue;
+        }
+        while (sp > anchor && ref > srcOffset && src.getByte(sp - 1) == src.getByte(ref - 1)) {
+          sp--;
+          ref--;
+        }
+        int matchLength = MIN_MATCH;
+        while (sp + matchLength + 8 <= matchLimit && src.getLong(sp + matchLength) == src.getLong(ref + matchLength)) {
+          matchLength += 8;
+        }
+        while (sp + matchLength < matchLimit && src.getByte(sp + matchLength) == src.getByte(ref + matchLength)) {
+          matchLength++;
+        }
+        int literals = sp - anchor;
+        if (dp + 1 + literals / 255 + 1 + literals + 2 + matchLength / 255 + 1 > dstEnd) {
+          return -1;
+        }
+        int token = dp++;
+        dp = writeLength(dst, dp, literals);
+        src.getBytes(anchor, dst, dp, literals);
+        dp += literals;
+        int offset = sp - ref;
+        dst.putByte(dp++, (byte) offset);
+        dst.putByte(dp++, (byte) (offset >>> 8));
+        int extraMatch = matchLength - MIN_MATCH;
+        dp = writeLength(dst, dp, extraMatch);
+        dst.putByte(token, (byte) ((Math.min(literals, 15) << 4) | Math.min(extraMatch, 15)));
+        sp += matchLength;
+        anchor = sp;
+      }
+    }
+    int literals = end - anchor;
+    if (dp + 1 + literals / 255 + 1 + literals > dstEnd) {
+      return -1;
+    }
+    dst.putByte(dp++, (byte) (Math.min(literals, 15) << 4));
+    dp = writeLength(dst, dp, literals);
+    src.getBytes(anchor, dst, dp, literals);
+    dp += literals;
+    return dp - dstOffset;
+  }
+
+  /**
+   * Decompress a block into the target.
+   *
+   * @param length number of compressed bytes.
+   * @param rawLength number of bytes the block decompress into.
+   * @throws IllegalStateException if the block is corrupt.
+   */
+  static void decompress(DirectBuffer src, int srcOffset, int length, DirectBuffer dst, int dstOffset, int rawLength) {
+    int sp = srcOffset;
+    int srcEnd = srcOffset + length;
+    int dp = dstOffset;
+    int dstEnd = dstOffset + rawLength;
+    while (true) {
+      int token = src.getByte(sp++) & 0xFF;
+      int literals = token >>> 4;
+      if (literals == 15) {
+        int b;
+        do {
+          b = src.getByte(sp++) & 0xFF;
+          literals += b;
+        } while (b == 255);
+      }
+      if (dp + literals > dstEnd || sp + literals > srcEnd) {
+        throw new IllegalStateException("Corrupt block, literals out of bounds");
+      }
+      src.getBytes(sp, dst, dp, literals);
+      sp += literals;
+      dp += literals;
+      if (sp >= srcEnd) {
+        break;
+      }
+      int offset = (src.getByte(sp) & 0xFF) | ((src.getByte(sp + 1) & 0xFF) << 8);
+      sp += 2;
+      int ref = dp - offset;
+      if (offset == 0 || ref < dstOffset) {
+        throw new IllegalStateException("Corrupt block, offset out of bounds");
+      }
+      int matchLength = token & 0x0F;
+      if (matchLength == 15) {
+        int b;
+        do {
+          b = src.getByte(sp++) & 0xFF;
+          matchLength += b;
+        } while (b == 255);
+      }
+      matchLength += MIN_MATCH;
+      if (dp + matchLength > dstEnd) {
+        throw new IllegalStateException("Corrupt block, match out of bounds");
+      }
+      if (offset >= matchLength) {
+        dst.getBytes(ref, dst, dp, matchLength);
+        dp += matchLength;
+      } else {
+        // overlapping match repeat recent bytes
+        for (int i = 0; i < matchLength; i++) {
+          dst.putByte(dp++, dst.getByte(ref + i));
+        }
+      }
+    }
+    if (dp != dstEnd) {
+      throw new IllegalStateException("Corrupt block, expected " + rawLength + " bytes got " + (dp - dstOffset));
+    }
+  }
+
+  private static int writeLength(DirectBuffer dst, int dp, int length) {
+    if (length < 15) {
+      return dp;
+    }
+    length -= 15;
+    while (length >= 255) {
+      dst.putByte(dp++, (byte) 255);
+      length -= 255;
+    }
+    dst.putByte(dp++, (byte) length);
+    return dp;
+  }
+
+  private static int hash(int sequence, int hashLog) {
+    return (sequence * -1640531535) >>> (32 - hashLog);
+  }
+}
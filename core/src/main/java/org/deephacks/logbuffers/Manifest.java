@@ -0,0 +1,289 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append only list of the intervals of a base path, so that readers do not have
+ * to list and parse the names of every interval directory on startup.
+ * <p/>
+ * The file start with a header of magic, version and interval length. Each
+ * record hold the name of the interval directory, its first index, time bounds
+ * and number of stripes. Appenders add an opened record when they start writing
+ * an interval and a closed record with the last written index when they roll
+ * away from it. A record that was torn by a crash is dropped.
+ * <p/>
+ * A manifest is seeded with the intervals already in the base path when it is
+ * created, so that it always list every interval. Readers fall back to listing
+ * the base path if the manifest is missing or does not match the interval of
+ * the buffer.
+ */
+final class Manifest {
+  private static final Logger logger = LoggerFactory.getLogger(Manifest.class);
+  static final String FILE_NAME = "manifest";
+  private static final int MAGIC = 0x4c424d46;
+  private static final byte VERSION = 1;
+  /** magic, version and interval length in milliseconds */
+  private static final int HEADER_LENGTH = 4 + 1 + 8;
+  /** kind, name length, stripes, start index, last index, start time and stop time */
+  private static final int RECORD_LENGTH = 1 + 1 + 2 + 8 + 8 + 8 + 8;
+  static final byte OPENED = 1;
+  static final byte CLOSED = 2;
+
+  private final File file;
+  private final FileChannel channel;
+  private final ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH + 255);
+  /** most recent interval in the manifest, stripes and restarts open the same interval */
+  private long lastOpened = -1;
+
+  private Manifest(File file, FileChannel channel) {
+    this.file = file;
+    this.channel = channel;
+  }
+
+  /**
+   * Open the manifest of a base path for appending, creating and seeding it
+   * with existing intervals if it does not exist.
+   *
+   * @return the manifest or null if the manifest is kept for another interval.
+   */
+  static Manifest open(File basePath, RollingRanges ranges) throws IOException {
+    File file = new File(basePath, FILE_NAME);
+    boolean created = !file.exists();
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    Manifest manifest = new Manifest(file, channel);
+    if (created || channel.size() < HEADER_LENGTH) {
+      channel.truncate(0);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      header.putInt(MAGIC).put(VERSION).putLong(ranges.getInterval()).flip();
+      manifest.write(header, 0);
+      manifest.seed(basePath, ranges);
+      return manifest;
+    }
+    Reader reader = new Reader(basePath);
+    List<Entry> entries = reader.readNew();
+    if (entries == null || reader.getInterval() != ranges.getInterval()) {
+      // readers of this buffer list the base path instead
+      logger.warn("Manifest {} does not match the interval of the buffer and is not updated", file);
+      channel.close();
+      return null;
+    }
+    // drop a record torn by a crash
+    channel.truncate(reader.position);
+    for (Entry entry : entries) {
+      manifest.lastOpened = Math.max(manifest.lastOpened, entry.startIndex);
+    }
+    return manifest;
+  }
+
+  /**
+   * Add intervals that were written before the manifest existed.
+   */
+  private void seed(File basePath, RollingRanges ranges) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(basePath.toPath())) {
+      for (Path path : stream) {
+        File dir = path.toFile();
+        String name = dir.getName();
+        if (!dir.isDirectory()) {
+          continue;
+        }
+        File chronicle = new File(dir, name);
+        StripedDir striped = StripedDir.tryCreateStriped(chronicle, ranges, null);
+        if (striped == null && !new File(dir, name + ".data").exists()) {
+          continue;
+        }
+        try {
+          Range timeRange = ranges.timeRange(name);
+          int stripes = striped == null ? 1 : striped.getStripes();
+          long startIndex = ranges.startIndexForTime(timeRange.start());
+          append(OPENED, name, stripes, startIndex, -1, timeRange.start(), timeRange.stop());
+          lastOpened = Math.max(lastOpened, startIndex);
+        } catch (IllegalArgumentException e) {
+          logger.debug("Not an interval of this buffer {}", dir);
+        }
+      }
+    }
+  }
+
+  /**
+   * Record that an appender started writing an interval.
+   */
+  synchronized void opened(String name, int stripes, long startIndex, long startTime, long stopTime) {
+    if (startIndex == lastOpened) {
+      return;
+    }
+    this.lastOpened = startIndex;
+    append(OPENED, name, stripes, startIndex, -1, startTime, stopTime);
+  }
+
+  /**
+   * Record that an appender stopped writing an interval.
+   *
+   * @param lastIndex last index written to the interval, -1 if unknown.
+   */
+  synchronized void closed(String name, int stripes, long startIndex, long lastIndex, long startTime, long stopTime) {
+    append(CLOSED, name, stripes, startIndex, lastIndex, startTime, stopTime);
+  }
+
+  private void append(byte kind, String name, int stripes, long startIndex, long lastIndex, long startTime, long stopTime) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    record.clear();
+    record.put(kind).put((byte) bytes.length).putShort((short) stripes)
+      .putLong(startIndex).putLong(lastIndex).putLong(startTime).putLong(stopTime)
+      .put(bytes).flip();
+    try {
+      write(record, channel.size());
+    } catch (IOException e) {
+      // readers fall back to the directory when they do not find an interval
+      logger.warn("Could not append to manifest " + file, e);
+    }
+  }
+
+  private void write(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.warn("Could not close " + file, e);
+    }
+  }
+
+  /**
+   * An interval listed in the manifest.
+   */
+  static final class Entry {
+    final String name;
+    final int stripes;
+    final long startIndex;
+    final long lastIndex;
+    final Range timeRange;
+
+    private Entry(String name, int stripes, long startIndex, long lastIndex, Range timeRange) {
+      this.name = name;
+      this.stripes = stripes;
+      this.startIndex = startIndex;
+      this.lastIndex = lastIndex;
+      this.timeRange = timeRange;
+    }
+  }
+
+  /**
+   * Read records appended to a manifest since the last read.
+   */
+  static final class Reader {
+    private final File file;
+    private long interval = -1;
+    /** position after the last complete record */
+    private long position = 0;
+
+    Reader(File basePath) {
+      this.file = new File(basePath, FILE_NAME);
+    }
+
+    static boolean exists(File basePath) {
+      return new File(basePath, FILE_NAME).exists();
+    }
+
+    /**
+     * @return interval length in milliseconds, -1 until read.
+     */
+    long getInterval() {
+      return interval;
+    }
+
+    /**
+     * @return ranges of the interval of the manifest, null if not a known interval.
+     */
+    RollingRanges ranges() {
+      if (interval == TimeUnit.SECONDS.toMillis(1)) {
+        return RollingRanges.secondly();
+      } else if (interval == TimeUnit.MINUTES.toMillis(1)) {
+        return RollingRanges.minutely();
+      } else if (interval == TimeUnit.HOURS.toMillis(1)) {
+        return RollingRanges.hourly();
+      } else if (interval == TimeUnit.DAYS.toMillis(1)) {
+        return RollingRanges.daily();
+      }
+      return null;
+    }
+
+    /**
+     * Map and read records appended since the last read.
+     *
+     * @return new records in order, or null if the manifest is missing or corrupt.
+     */
+    synchronized List<Entry> readNew() {
+      List<Entry> entries = new ArrayList<>();
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        long size = channel.size();
+        if (size <= position) {
+          return entries;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size - position);
+        if (position == 0) {
+          if (size < HEADER_LENGTH || buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+            return null;
+          }
+          this.interval = buffer.getLong();
+        }
+        while (buffer.remaining() >= RECORD_LENGTH) {
+          int start = buffer.position();
+          byte kind = buffer.get();
+          int nameLength = buffer.get() & 0xFF;
+          int stripes = buffer.getShort();
+          long startIndex = buffer.getLong();
+          long lastIndex = buffer.getLong();
+          long startTime = buffer.getLong();
+          long stopTime = buffer.getLong();
+          if ((kind != OPENED && kind != CLOSED) || buffer.remaining() < nameLength) {
+            // torn record
+            buffer.position(start);
+            break;
+          }
+          byte[] name = new byte[nameLength];
+          buffer.get(name);
+          entries.add(new Entry(new String(name, StandardCharsets.UTF_8), stripes, startIndex, lastIndex,
+            Range.closed(startTime, stopTime)));
+        }
+        this.position += buffer.position();
+        return entries;
+      } catch (IOException e) {
+        logger.warn("Could not read manifest " + file, e);
+        return null;
+      }
+    }
+  }
+}
@@ -1,12 +1,43 @@
 package org.deephacks.logbuffers;
 
+import org.deephacks.vals.DirectBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+
 public class Query {
   private final QueryType type;
   private final Range range;
+  /** record type to match, -1 match any type */
+  private final int recordType;
+  private final boolean hasKeyHash;
+  private final int keyHash;
+  /** logs are returned from the most recent to the oldest */
+  private final boolean reversed;
+  /** checked against the content in mapped memory, null match any content */
+  private final Predicate<DirectBuffer> contentFilter;
+  /** only the most recent number of matching logs, -1 match all logs */
+  private final long limit;
+  /** indexes of logs found by a query for the last logs of striped intervals, null match any index */
+  private final LongPredicate indexFilter;
 
   Query(QueryType type, Range range){
+    this(type, range, -1, false, 0, false, null, -1, null);
+  }
+
+  private Query(QueryType type, Range range, int recordType, boolean hasKeyHash, int keyHash, boolean reversed,
+                Predicate<DirectBuffer> contentFilter, long limit, LongPredicate indexFilter) {
     this.type = type;
     this.range = range;
+    this.recordType = recordType;
+    this.hasKeyHash = hasKeyHash;
+    this.keyHash = keyHash;
+    this.reversed = reversed;
+    this.contentFilter = contentFilter;
+    this.limit = limit;
+    this.indexFilter = indexFilter;
   }
 
   public static Query closedIndex(long start, long stop) {
@@ -33,6 +64,203 @@ public class Query {
     return new Query(QueryType.TIME, Range.atMost(stop));
   }
 
+  /**
+   * Match the most recent logs of the buffer, like tail -n. Logs are found by
+   * walking the index backward from the last written log of the newest interval
+   * and are returned in ascending order, unless the query is reversed. Filters
+   * given to the query apply before logs are counted.
+   *
+   * @param n number of logs to match.
+   */
+  public static Query last(long n) {
+    Guavas.checkArgument(n > 0, "number of logs must be positive");
+    return new Query(QueryType.INDEX, Range.atLeast(0), -1, false, 0, false, null, n, null);
+  }
+
+  /**
+   * Match the most recent logs written at or before a time, in ascending order.
+   *
+   * @param time in milliseconds.
+   * @param n number of logs to match.
+   * @see #last(long)
+   */
+  public static Query lastBefore(long time, long n) {
+    Guavas.checkArgument(n > 0, "number of logs must be positive");
+    return new Query(QueryType.TIME, Range.atMost(time), -1, false, 0, false, null, n, null);
+  }
+
+  /**
+   * Narrow a query for the last logs to the index range where those logs were found.
+   */
+  Query resolved(long firstIndex, long lastIndex) {
+    return new Query(QueryType.INDEX, Range.closed(firstIndex, lastIndex), recordType, hasKeyHash, keyHash, reversed,
+      contentFilter, -1, null);
+  }
+
+  /**
+   * Narrow a query for the last logs to the time range and the index ranges where
+   * those logs were found. Indexes are not ordered by time across stripes, so
+   * striped intervals contribute one index range per stripe.
+   */
+  Query resolved(long firstTimestamp, long lastTimestamp, final List<Range> indexes) {
+    LongPredicate found = index -> {
+      for (Range range : indexes) {
+        if (range.contains(index)) {
+          return true;
+        }
+      }
+      return false;
+    };
+    return new Query(QueryType.TIME, Range.closed(firstTimestamp, lastTimestamp), recordType, hasKeyHash, keyHash,
+      reversed, contentFilter, -1, found);
+  }
+
+  /**
+   * Only match logs written with a certain record type. Logs are filtered on their
+   * header before the log or its content is read.
+   */
+  public Query withRecordType(int recordType) {
+    Guavas.checkArgument(recordType >= 0 && recordType <= 255, "record type must be between 0 and 255");
+    return new Query(type, range, recordType, hasKeyHash, keyHash, reversed, contentFilter, limit, indexFilter);
+  }
+
+  /**
+   * Only match logs written with a certain key hash. Logs are filtered on their
+   * header before the log or its content is read.
+   */
+  public Query withKeyHash(int keyHash) {
+    return new Query(type, range, recordType, true, keyHash, reversed, contentFilter, limit, indexFilter);
+  }
+
+  /**
+   * Return matching logs in descending order, from the most recent log to the
+   * oldest. Intervals are walked backward from the end of the query and each
+   * interval is read backward from its last written log.
+   */
+  public Query reversed() {
+    return new Query(type, range, recordType, hasKeyHash, keyHash, !reversed, contentFilter, limit, indexFilter);
+  }
+
+  /**
+   * Only match logs with content that start with a prefix. Content is checked
+   * in mapped memory before the log is created.
+   */
+  public Query withContentPrefix(byte[] prefix) {
+    final byte[] bytes = Guavas.checkNotNull(prefix).clone();
+    return withContent(content -> content.capacity() >= bytes.length && regionMatches(content, 0, bytes));
+  }
+
+  /**
+   * Only match logs with UTF-8 content that start with a prefix.
+   */
+  public Query withContentPrefix(String prefix) {
+    return withContentPrefix(prefix.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Only match logs with content that contain a sequence of bytes. Content is
+   * checked in mapped memory before the log is created.
+   */
+  public Query withContentContaining(byte[] sequence) {
+    final byte[] bytes = Guavas.checkNotNull(sequence).clone();
+    return withContent(content -> indexOf(content, bytes) >= 0);
+  }
+
+  /**
+   * Only match logs with UTF-8 content that contain a string.
+   */
+  public Query withContentContaining(String sequence) {
+    return withContentContaining(sequence.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Only match logs with content accepted by a predicate, like a field of vals
+   * encoded content. The predicate is given a view of the (uncompressed) content
+   * in mapped memory that is only valid until the predicate return. Predicates
+   * are combined with those already given to the query.
+   */
+  public Query withContent(Predicate<DirectBuffer> predicate) {
+    Guavas.checkNotNull(predicate);
+    Predicate<DirectBuffer> filter = contentFilter == null ? predicate : contentFilter.and(predicate);
+    return new Query(type, range, recordType, hasKeyHash, keyHash, reversed, filter, limit, indexFilter);
+  }
+
+  /**
+   * @return predicate that content must match, or null if any content match.
+   */
+  Predicate<DirectBuffer> getContentFilter() {
+    return contentFilter;
+  }
+
+  /**
+   * @return predicate that indexes must match, or null if any index match.
+   */
+  LongPredicate getIndexFilter() {
+    return indexFilter;
+  }
+
+  private static boolean regionMatches(DirectBuffer content, int offset, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if (content.getByte(offset + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return position of the first occurrence of the bytes in the content, or -1.
+   */
+  static int indexOf(DirectBuffer content, byte[] bytes) {
+    if (bytes.length == 0) {
+      return 0;
+    }
+    byte first = bytes[0];
+    for (int i = 0, last = content.capacity() - bytes.length; i <= last; i++) {
+      if (content.getByte(i) == first && regionMatches(content, i, bytes)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public boolean isReversed() {
+    return reversed;
+  }
+
+  /**
+   * @return record type to match or -1 if any type match.
+   */
+  public int getRecordType() {
+    return recordType;
+  }
+
+  public boolean hasKeyHash() {
+    return hasKeyHash;
+  }
+
+  public int getKeyHash() {
+    return keyHash;
+  }
+
+  /**
+   * @return true if logs must be checked against header or content filters.
+   */
+  boolean hasFilter() {
+    return recordType >= 0 || hasKeyHash || contentFilter != null || indexFilter != null;
+  }
+
+  /**
+   * @return number of most recent logs to match, or -1 if all logs match.
+   */
+  public long getLimit() {
+    return limit;
+  }
+
+  public boolean hasLimit() {
+    return limit > 0;
+  }
+
   public long start() {
     return range.start();
   }
@@ -73,6 +301,12 @@ public class Query {
   public String toString() {
     return "Query." + type + "{" +
        range +
+      (recordType >= 0 ? ", type=" + recordType : "") +
+      (hasKeyHash ? ", keyHash=" + keyHash : "") +
+      (reversed ? ", reversed" : "") +
+      (contentFilter != null ? ", content" : "") +
+      (limit > 0 ? ", last=" + limit : "") +
+      (indexFilter != null ? ", indexes" : "") +
       '}';
   }
 }
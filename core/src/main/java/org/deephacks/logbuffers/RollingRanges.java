@@ -10,11 +10,12 @@ import java.util.concurrent.TimeUnit;
 import static org.deephacks.logbuffers.Guavas.checkArgument;
 
 public class RollingRanges {
-  static SimpleDateFormat DAY_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
-  static SimpleDateFormat HOUR_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-z");
-  static SimpleDateFormat MINUTE_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm-z");
-  static SimpleDateFormat SECOND_FORMAT = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss-z");
-  static SimpleDateFormat MS_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS-z");
+  /** SimpleDateFormat is not thread safe so writers, readers and the roller each get their own */
+  static final ThreadLocal<SimpleDateFormat> DAY_FORMAT = gmtFormat("yyyy-MM-dd");
+  static final ThreadLocal<SimpleDateFormat> HOUR_FORMAT = gmtFormat("yyyy-MM-dd-HH-z");
+  static final ThreadLocal<SimpleDateFormat> MINUTE_FORMAT = gmtFormat("yyyy-MM-dd-HH-mm-z");
+  static final ThreadLocal<SimpleDateFormat> SECOND_FORMAT = gmtFormat("yyyy-MM-dd-HH-mm-ss-z");
+  static final ThreadLocal<SimpleDateFormat> MS_FORMAT = gmtFormat("yyyy-MM-dd'T'HH:mm:ss.SSS-z");
   static HashMap<String, String> AVAILABLE_TIME_ZONES = new HashMap<>();
   static {
     for (String zone : TimeZone.getAvailableIDs()) {
@@ -26,14 +27,20 @@ public class RollingRanges {
   private long indexesPerInterval = 0;
   private final long interval;
 
-  private final SimpleDateFormat format;
-  private final TimeZone defaultTimeZone = TimeZone.getTimeZone("GMT");
+  private final ThreadLocal<SimpleDateFormat> format;
 
-  private RollingRanges(TimeUnit unit, SimpleDateFormat format) {
+  private RollingRanges(TimeUnit unit, ThreadLocal<SimpleDateFormat> format) {
     this.interval = unit.toMillis(1);
     this.indexesPerInterval = interval * MAX_INDEX_PER_MS;
     this.format = format;
-    this.format.setTimeZone(defaultTimeZone);
+  }
+
+  private static ThreadLocal<SimpleDateFormat> gmtFormat(String pattern) {
+    return ThreadLocal.withInitial(() -> {
+      SimpleDateFormat format = new SimpleDateFormat(pattern);
+      format.setTimeZone(TimeZone.getTimeZone("GMT"));
+      return format;
+    });
   }
 
   /**
@@ -62,9 +69,9 @@ public class RollingRanges {
     return AVAILABLE_TIME_ZONES.containsKey(s);
   }
 
-  private static boolean canParse(String timeFormat, SimpleDateFormat simpleDateFormat) {
+  private static boolean canParse(String timeFormat, ThreadLocal<SimpleDateFormat> simpleDateFormat) {
     try {
-      simpleDateFormat.parse(timeFormat);
+      simpleDateFormat.get().parse(timeFormat);
       return true;
     } catch (ParseException e) {
       return false;
@@ -103,7 +110,7 @@ public class RollingRanges {
    * Format fromTime according to the interval of this date range.
    */
   public String formatTime(long timestamp) {
-    return format.format(new Date(timestamp));
+    return format.get().format(new Date(timestamp));
   }
 
   /**
@@ -142,7 +149,7 @@ public class RollingRanges {
    */
   public long startIndex(String timeFormat) {
     try {
-      Date date = format.parse(timeFormat);
+      Date date = format.get().parse(timeFormat);
       return startIndexForTime(date.getTime());
     } catch (ParseException e) {
       throw new IllegalArgumentException("Format not recognized " + timeFormat);
@@ -239,7 +246,7 @@ public class RollingRanges {
   public String startTimeFormatForIndex(long index) {
     long time = startTimeForIndex(index);
     Date date = new Date(time);
-    return format.format(date);
+    return format.get().format(date);
   }
   /*
   public Range rangeFor(String timeFormat) {
@@ -248,6 +255,20 @@ public class RollingRanges {
   }
   */
 
+  /**
+   * Length of each interval in milliseconds.
+   */
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Number of indexes available in each interval.
+   */
+  public long getIndexesPerInterval() {
+    return indexesPerInterval;
+  }
+
   public long indexOffset(long startTime) {
     return startIndexForTime(startTime);
   }
@@ -0,0 +1,363 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import net.openhft.chronicle.ChronicleConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.deephacks.logbuffers.Dirs.Dir;
+
+/**
+ * An interval written by striped appenders. Each stripe is a separate chronicle
+ * in the interval directory that own an equal share of the index range of the
+ * interval, stripe s start at index start + s * (indexes per interval / stripes).
+ * <p/>
+ * Logs within a stripe are ordered by index and timestamp. Iterating a striped
+ * interval merge all stripes into a single stream ordered by timestamp and index.
+ */
+class StripedDir extends Dir {
+  private static final Pattern STRIPE_FILE = Pattern.compile("(.+)\\.s(\\d+)-(\\d+)\\.data");
+  private static final Comparator<Head> ORDER = Comparator
+    .comparingLong((Head h) -> h.log.getTimestampMicros())
+    .thenComparingLong(h -> h.log.getIndex());
+  private final Dir[] stripes;
+  private final long span;
+  private final File intervalDir;
+  private final String intervalName;
+
+  /**
+   * @param basePath chronicle path of the interval, like a regular dir.
+   * @param stripes  number of stripes the interval was written with.
+   */
+  StripedDir(File basePath, File intervalDir, RollingRanges ranges, ChronicleConfig config, int stripes) {
+    super(basePath, ranges, config);
+    this.intervalDir = intervalDir;
+    this.intervalName = basePath.getName();
+    this.stripes = new Dir[stripes];
+    this.span = ranges.getIndexesPerInterval() / stripes;
+  }
+
+  /**
+   * Name of the chronicle of a stripe within an interval directory.
+   */
+  static String chronicleName(String intervalName, int stripe, int stripes) {
+    return intervalName + ".s" + stripe + "-" + stripes;
+  }
+
+  /**
+   * First index of a stripe relative to the start of its interval.
+   */
+  static long stripeOffset(RollingRanges ranges, int stripe, int stripes) {
+    return stripe * (ranges.getIndexesPerInterval() / stripes);
+  }
+
+  /**
+   * Stripe that own an index, given the number of stripes of its interval.
+   */
+  static int stripeOf(RollingRanges ranges, long index, int stripes) {
+    long span = ranges.getIndexesPerInterval() / stripes;
+    return (int) ((index - ranges.startIndexForIndex(index)) / span);
+  }
+
+  /**
+   * Create a striped dir if the interval directory contain stripes.
+   *
+   * @param basePath chronicle path of the interval, or the interval directory itself.
+   * @return null if the interval is not striped.
+   */
+  static StripedDir tryCreateStriped(File basePath, RollingRanges ranges, ChronicleConfig config) {
+    File intervalDir = basePath.isDirectory() ? basePath : basePath.getParentFile();
+    String[] names = intervalDir.list();
+    if (names == null) {
+      return null;
+    }
+    for (String name : names) {
+      Matcher matcher = STRIPE_FILE.matcher(name);
+      if (matcher.matches() && matcher.group(1).equals(basePath.getName())) {
+        int stripes = Integer.parseInt(matcher.group(3));
+        return new StripedDir(basePath, intervalDir, ranges, config, stripes);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return number of stripes the interval was written with.
+   */
+  int getStripes() {
+    return stripes.length;
+  }
+
+  /**
+   * @return the stripe or null if nothing have been written to it yet.
+   */
+  private synchronized Dir stripe(int stripe) {
+    Dir dir = stripes[stripe];
+    if (dir != null) {
+      return dir;
+    }
+    String name = chronicleName(intervalName, stripe, stripes.length);
+    if (!new File(intervalDir, name + ".data").exists()) {
+      // do not create chronicle files for readers
+      return null;
+    }
+    long start = indexRange.start() + stripe * span;
+    dir = new Dir(new File(intervalDir, name), ranges(), config(), timeRange, Range.closed(start, start + span - 1));
+    dir.cache = cache;
+    stripes[stripe] = dir;
+    return dir;
+  }
+
+  @Override
+  public Log getLog(long index) {
+    if (!indexRange.contains(index)) {
+      return null;
+    }
+    Dir dir = stripe((int) ((index - indexRange.start()) / span));
+    return dir == null ? null : dir.getLog(index);
+  }
+
+  @Override
+  public long getLastWrittenIndex() {
+    long last = indexRange.start();
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      if (dir != null) {
+        last = Math.max(last, dir.getLastWrittenIndex());
+      }
+    }
+    return last;
+  }
+
+  @Override
+  AbstractIterable<Log> iterateFirst(Query query) {
+    if (!query.isTimeQuery()) {
+      return super.iterateFirst(query);
+    }
+    List<AbstractIterable<Log>> logs = new ArrayList<>();
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      if (dir != null) {
+        logs.add(dir.iterateFirst(query));
+      }
+    }
+    return merge(logs, query);
+  }
+
+  @Override
+  public AbstractIterable<Log> iterate(long startIndex, Query query) {
+    List<AbstractIterable<Log>> logs = new ArrayList<>();
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      if (dir != null && dir.indexRange.stop() >= startIndex) {
+        logs.add(dir.iterate(Math.max(startIndex, dir.indexRange.start()), query));
+      }
+    }
+    return merge(logs, query);
+  }
+
+  @Override
+  AbstractIterable<Log> iterateReversed(Query query) {
+    List<AbstractIterable<Log>> logs = new ArrayList<>();
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      if (dir != null) {
+        logs.add(dir.iterateReversed(query));
+      }
+    }
+    return merge(logs, query);
+  }
+
+  /**
+   * Stripes are merged by timestamp through log objects, so scanning a striped
+   * interval is not free of allocation.
+   */
+  @Override
+  boolean scan(Query query, LogCursor cursor, Consumer<LogCursor> consumer) {
+    AbstractIterable<Log> logs = iterateFirst(query);
+    Log log;
+    while ((log = logs.computeNext()) != null) {
+      if (log.isIn(query)) {
+        log.accept(cursor, consumer);
+      } else if (log.greaterThan(query)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Merge stripes ordered by timestamp and index, descending for reversed queries.
+   * Each stripe end as soon as it pass the query since indexes are not ordered
+   * across stripes.
+   */
+  private static AbstractIterable<Log> merge(List<AbstractIterable<Log>> stripes, Query query) {
+    PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, stripes.size()),
+      query.isReversed() ? ORDER.reversed() : ORDER);
+    for (AbstractIterable<Log> stripe : stripes) {
+      Head head = new Head(stripe);
+      if (head.advance(query)) {
+        heads.add(head);
+      }
+    }
+    return new AbstractIterable<Log>() {
+      @Override
+      protected Log computeNext() {
+        Head head = heads.poll();
+        if (head == null) {
+          return null;
+        }
+        Log log = head.log;
+        if (head.advance(query)) {
+          heads.add(head);
+        }
+        return log;
+      }
+    };
+  }
+
+  @Override
+  LogStats stats(Query query) {
+    List<LogStats> stats = new ArrayList<>();
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      LogStats stripe = dir == null ? null : dir.stats(query);
+      if (stripe != null) {
+        stats.add(stripe);
+      }
+    }
+    return LogStats.sum(stats);
+  }
+
+  /**
+   * Take the most recent logs from the stripes merged by timestamp, since indexes
+   * are not ordered by time across stripes. Logs found within a stripe are the
+   * most recent of that stripe, so they form one index range per stripe.
+   */
+  @Override
+  LogStats last(Query query, long n, List<Range> indexes) {
+    AbstractIterable<Log> logs = iterateReversed(query.isReversed() ? query : query.reversed());
+    long[] first = new long[stripes.length];
+    long[] last = new long[stripes.length];
+    Arrays.fill(last, -1);
+    long count = 0;
+    long bytes = 0;
+    long firstTimestamp = 0;
+    long lastTimestamp = 0;
+    Log log;
+    while (count < n && (log = logs.computeNext()) != null) {
+      int stripe = (int) ((log.getIndex() - indexRange.start()) / span);
+      if (last[stripe] < 0) {
+        last[stripe] = log.getIndex();
+      }
+      first[stripe] = log.getIndex();
+      if (count == 0) {
+        lastTimestamp = log.getTimestamp();
+      }
+      firstTimestamp = log.getTimestamp();
+      bytes += log.getStoredLength();
+      count++;
+    }
+    if (count == 0) {
+      return null;
+    }
+    long firstIndex = Long.MAX_VALUE;
+    long lastIndex = Long.MIN_VALUE;
+    for (int i = 0; i < stripes.length; i++) {
+      if (last[i] >= 0) {
+        indexes.add(Range.closed(first[i], last[i]));
+        firstIndex = Math.min(firstIndex, first[i]);
+        lastIndex = Math.max(lastIndex, last[i]);
+      }
+    }
+    return new LogStats(timeRange, count, bytes, firstIndex, lastIndex, firstTimestamp, lastTimestamp);
+  }
+
+  @Override
+  boolean isOpen() {
+    for (Dir dir : stripes) {
+      if (dir != null && dir.isOpen()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  boolean scheduleReadAhead() {
+    if (!isOpen()) {
+      // stripes are closed one by one, read ahead again once all of them are
+      readAheadScheduled = false;
+    }
+    return super.scheduleReadAhead();
+  }
+
+  @Override
+  void openAhead() {
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      if (dir != null) {
+        dir.openAhead();
+      }
+    }
+  }
+
+  @Override
+  void readAhead() throws IOException {
+    for (int i = 0; i < stripes.length; i++) {
+      Dir dir = stripe(i);
+      if (dir != null) {
+        dir.readAhead();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Dir dir : stripes) {
+      if (dir != null) {
+        dir.close();
+      }
+    }
+    readAheadScheduled = false;
+  }
+
+  private static final class Head {
+    private final AbstractIterable<Log> logs;
+    private Log log;
+
+    private Head(AbstractIterable<Log> logs) {
+      this.logs = logs;
+    }
+
+    private boolean advance(Query query) {
+      log = logs.computeNext();
+      if (log != null && !query.isReversed() && !log.isIn(query) && log.greaterThan(query)) {
+        // past the end of the query
+        log = null;
+      }
+      return log != null;
+    }
+  }
+}
@@ -20,6 +20,8 @@ public class TailSchedule {
 
   private Optional<Long> starTime;
 
+  private final boolean durableOnly;
+
   private final Tail tail;
   private boolean initalized = false;
 
@@ -30,6 +32,7 @@ public class TailSchedule {
     this.backLogScheduleDelay = builder.backLogScheduleDelay;
     this.backLogScheduleUnit = Optional.ofNullable(builder.backLogScheduleUnit).orElse(TimeUnit.MILLISECONDS);
     this.starTime = Optional.ofNullable(builder.starTime);
+    this.durableOnly = builder.durableOnly;
   }
 
   public boolean isInitalized() {
@@ -64,6 +67,10 @@ public class TailSchedule {
     return starTime;
   }
 
+  public boolean isDurableOnly() {
+    return durableOnly;
+  }
+
   public static abstract class Builder<T extends Builder<T>> {
     private Integer delay;
     private TimeUnit unit;
@@ -73,6 +80,8 @@ public class TailSchedule {
 
     private Long starTime;
 
+    private boolean durableOnly;
+
     private Tail tail;
 
     protected Builder(Tail tail) {
@@ -107,6 +116,21 @@ public class TailSchedule {
       return self();
     }
 
+    /**
+     * Only give logs that have been forced to disk by the log buffer, so that the tail
+     * never process logs that may be lost in a crash. Logs written by another process
+     * are always considered durable. Default is false.
+     * <p/>
+     * The log buffer must have a durability policy other than {@link Durability#none()},
+     * otherwise the tail is rejected with an IllegalArgumentException.
+     *
+     * @see LogBuffer#getDurableIndex()
+     */
+    public T durableOnly(boolean durableOnly) {
+      this.durableOnly = durableOnly;
+      return self();
+    }
+
     public TailSchedule build() {
       return new TailSchedule(this);
     }
@@ -0,0 +1,176 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse index from time to log index kept next to the chronicle of an interval.
+ * The writer add an entry of timestamp and index for the first log, every
+ * {@link #RECORDS_PER_ENTRY} logs and the first log of every second. A time seek
+ * is then a search among entries in memory followed by a short forward scan,
+ * instead of a binary search over the mapped chronicle.
+ * <p/>
+ * Entries are only appended, so readers load new entries incrementally as the
+ * file grow. A sidecar is only written for chronicles that were created with it,
+ * which guarantee that the first entry is the first log of the chronicle.
+ * Chronicles without a sidecar fall back to binary search.
+ */
+final class TimeIndex {
+  private static final Logger logger = LoggerFactory.getLogger(TimeIndex.class);
+  static final String SUFFIX = ".time";
+  /** timestamp and index */
+  static final int ENTRY_SIZE = 8 + 8;
+  /** maximum number of logs between two entries within the same second */
+  static final int RECORDS_PER_ENTRY = 1024;
+  private final File file;
+  private long[] times = new long[16];
+  private long[] indexes = new long[16];
+  private int size = 0;
+
+  TimeIndex(String chroniclePath) {
+    this.file = new File(chroniclePath + SUFFIX);
+  }
+
+  /**
+   * Find the index to scan forward from for the first log at or after a time.
+   *
+   * @param time        time in milliseconds.
+   * @param lastWritten entries after this index are ignored.
+   * @return index of the last entry before the time, the first log if the time is
+   * before all entries, or -1 if there are no entries.
+   */
+  synchronized long seek(long time, long lastWritten) {
+    refresh();
+    int pos = Arrays.binarySearch(times, 0, size, time);
+    // last entry strictly before the time, equal timestamps may precede the match
+    int floor = pos >= 0 ? pos - 1 : -pos - 2;
+    while (pos >= 0 && floor >= 0 && times[floor] == time) {
+      floor--;
+    }
+    while (floor >= 0 && indexes[floor] > lastWritten) {
+      floor--;
+    }
+    if (floor >= 0) {
+      return indexes[floor];
+    }
+    return size == 0 || indexes[0] > lastWritten ? -1 : indexes[0];
+  }
+
+  /**
+   * Load entries appended since the last refresh.
+   */
+  private void refresh() {
+    long entries = file.length() / ENTRY_SIZE;
+    if (entries <= size) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) (entries - size) * ENTRY_SIZE);
+      long position = (long) size * ENTRY_SIZE;
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position + buffer.position());
+        if (read < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      if (times.length < entries) {
+        int capacity = (int) Math.max(entries, times.length * 2L);
+        times = Arrays.copyOf(times, capacity);
+        indexes = Arrays.copyOf(indexes, capacity);
+      }
+      while (buffer.remaining() >= ENTRY_SIZE) {
+        times[size] = buffer.getLong();
+        indexes[size] = buffer.getLong();
+        size++;
+      }
+    } catch (IOException e) {
+      logger.warn("Could not read time index " + file, e);
+    }
+  }
+
+  /**
+   * Append entries for logs written to a chronicle. Only touched by the writer.
+   */
+  static final class Writer {
+    private final File file;
+    private final ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+    private FileChannel channel;
+    /** logs appended since the last entry */
+    private int sinceEntry = 0;
+    /** the first log at or after this time get an entry */
+    private long nextEntryTime = Long.MIN_VALUE;
+
+    private Writer(File file, FileChannel channel) {
+      this.file = file;
+      this.channel = channel;
+    }
+
+    /**
+     * @param newChronicle true if the chronicle have no logs yet.
+     * @return a writer or null if the chronicle was written without a time index.
+     */
+    static Writer open(String chroniclePath, boolean newChronicle) throws IOException {
+      File file = new File(chroniclePath + SUFFIX);
+      if (!newChronicle && !file.exists()) {
+        return null;
+      }
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      // drop a partial entry left by a crash
+      channel.truncate(channel.size() - channel.size() % ENTRY_SIZE);
+      return new Writer(file, channel);
+    }
+
+    void appended(long index, long time) {
+      if (channel == null || (time < nextEntryTime && ++sinceEntry < RECORDS_PER_ENTRY)) {
+        return;
+      }
+      sinceEntry = 0;
+      nextEntryTime = (time / 1000 + 1) * 1000;
+      entry.clear();
+      entry.putLong(time).putLong(index).flip();
+      try {
+        while (entry.hasRemaining()) {
+          channel.write(entry);
+        }
+      } catch (IOException e) {
+        // readers scan forward from the last entry written
+        logger.warn("Could not write time index " + file + ", disabled for this interval", e);
+        close();
+      }
+    }
+
+    void close() {
+      if (channel == null) {
+        return;
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        logger.warn("Could not close " + file, e);
+      }
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.deephacks.logbuffers;
+
+import org.deephacks.vals.DirectBuffer;
+import org.deephacks.vals.Encodable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.deephacks.logbuffers.Guavas.checkArgument;
+
+/**
+ * Multi-producer write path. Producers claim slots in a bounded ring without
+ * blocking each other and a single drainer thread own the appender and append
+ * slots in the order they were claimed.
+ * <p/>
+ * The drainer is the only ordering point so indexes and timestamps are
+ * assigned monotonically, just like the synchronized write path. Each slot
+ * carry the appender it is written to, so named streams of a log buffer can
+ * share one ring and one drainer.
+ */
+class WriteRing {
+  private static final Logger logger = LoggerFactory.getLogger(WriteRing.class);
+  /** number of busy spins before a waiting thread starts to yield */
+  private static final int SPINS = 100;
+  /** number of yields before a waiting thread starts to park */
+  private static final int YIELDS = SPINS + 100;
+  /** max park time for a waiting thread, bound the cost of a lost wakeup */
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final Slot[] slots;
+  private final int mask;
+  private final Clock clock;
+  /** next sequence to be claimed by a producer */
+  private final AtomicLong claimed = new AtomicLong();
+  private final Thread drainer;
+  /** sequence of the next slot to be appended by the drainer */
+  private volatile long drained = 0;
+  private volatile boolean drainerParked = false;
+  private volatile boolean closed = false;
+
+  WriteRing(int size, Clock clock) {
+    checkArgument(size > 0 && Integer.bitCount(size) == 1, "ring size must be a power of two " + size);
+    this.clock = clock;
+    this.slots = new Slot[size];
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot(i);
+    }
+    this.drainer = new Thread(this::drain, "logbuffer-drainer");
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  Log write(AppenderHolder holder, byte[] content) throws IOException {
+    return write(holder, 0, 0, content);
+  }
+
+  Log write(AppenderHolder holder, int type, int keyHash, byte[] content) throws IOException {
+    Slot slot = claim(holder);
+    slot.content = content;
+    slot.type = type;
+    slot.keyHash = keyHash;
+    publish(slot);
+    slot.await();
+    Log log = slot.log;
+    slot.release();
+    return log;
+  }
+
+  Log write(AppenderHolder holder, Encodable encodable) throws IOException {
+    return write(holder, 0, 0, encodable);
+  }
+
+  Log write(AppenderHolder holder, int type, int keyHash, Encodable encodable) throws IOException {
+    Slot slot = claim(holder);
+    slot.encodable = encodable;
+    slot.type = type;
+    slot.keyHash = keyHash;
+    publish(slot);
+    slot.await();
+    Log log = slot.log;
+    slot.release();
+    return log;
+  }
+
+  long append(AppenderHolder holder, byte[] content) throws IOException {
+    Slot slot = claim(holder);
+    slot.content = content;
+    slot.indexOnly = true;
+    publish(slot);
+    slot.await();
+    long index = slot.index;
+    slot.release();
+    return index;
+  }
+
+  long append(AppenderHolder holder, String string) throws IOException {
+    Slot slot = claim(holder);
+    slot.string = string;
+    publish(slot);
+    slot.await();
+    long index = slot.index;
+    slot.release();
+    return index;
+  }
+
+  long append(AppenderHolder holder, Encodable encodable) throws IOException {
+    Slot slot = claim(holder);
+    slot.encodable = encodable;
+    slot.indexOnly = true;
+    publish(slot);
+    slot.await();
+    long index = slot.index;
+    slot.release();
+    return index;
+  }
+
+  long append(AppenderHolder holder, ByteBuffer buffer) throws IOException {
+    Slot slot = claim(holder);
+    slot.buffer = buffer;
+    publish(slot);
+    slot.await();
+    long index = slot.index;
+    slot.release();
+    return index;
+  }
+
+  long append(AppenderHolder holder, DirectBuffer buffer, int offset, int length) throws IOException {
+    Slot slot = claim(holder);
+    slot.directBuffer = buffer;
+    slot.offset = offset;
+    slot.length = length;
+    publish(slot);
+    slot.await();
+    long index = slot.index;
+    slot.release();
+    return index;
+  }
+
+  Range writeBatch(AppenderHolder holder, List<byte[]> contents) throws IOException {
+    Slot slot = claim(holder);
+    slot.contents = contents;
+    publish(slot);
+    slot.await();
+    Range range = slot.range;
+    slot.release();
+    return range;
+  }
+
+  Range writeBatch(AppenderHolder holder, Collection<? extends Encodable> encodables) throws IOException {
+    Slot slot = claim(holder);
+    slot.encodables = encodables;
+    publish(slot);
+    slot.await();
+    Range range = slot.range;
+    slot.release();
+    return range;
+  }
+
+  private Slot claim(AppenderHolder holder) throws IOException {
+    // a dead drainer never hands slots back, fail instead of waiting for them
+    if (closed || !drainer.isAlive()) {
+      throw new IOException("Log buffer is closed");
+    }
+    long sequence = claimed.getAndIncrement();
+    Slot slot = slots[(int) (sequence & mask)];
+    // wait for the producer that previously owned the slot to pick up its result
+    int spins = 0;
+    while (slot.available != sequence) {
+      if (!drainer.isAlive()) {
+        throw new IOException("Log buffer is closed");
+      }
+      spins = backoff(spins);
+    }
+    slot.sequence = sequence;
+    slot.waiter = Thread.currentThread();
+    slot.holder = holder;
+    return slot;
+  }
+
+  private void publish(Slot slot) {
+    slot.published = slot.sequence;
+    if (drainerParked) {
+      LockSupport.unpark(drainer);
+    }
+  }
+
+  private void drain() {
+    long sequence = 0;
+    int spins = 0;
+    while (true) {
+      Slot slot = slots[(int) (sequence & mask)];
+      if (slot.published != sequence) {
+        if (closed && claimed.get() == sequence) {
+          return;
+        }
+        if (spins++ < SPINS) {
+          continue;
+        }
+        drainerParked = true;
+        // re-check after announcing the park to avoid missing a publish
+        if (slot.published != sequence && !closed) {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        drainerParked = false;
+        continue;
+      }
+      spins = 0;
+      AppenderHolder appenderHolder = slot.holder;
+      // drain everything published so far for the same appender under one uncontended monitor
+      synchronized (appenderHolder) {
+        while (slot.published == sequence && slot.holder == appenderHolder) {
+          append(slot, appenderHolder);
+          sequence++;
+          slot = slots[(int) (sequence & mask)];
+        }
+      }
+      drained = sequence;
+    }
+  }
+
+  private void append(Slot slot, AppenderHolder appenderHolder) {
+    try {
+      long micros = appenderHolder.nextTimeMicros(clock);
+      appenderHolder.meta(slot.type, slot.keyHash);
+      if (slot.indexOnly && slot.content != null) {
+        slot.index = Log.write(micros, slot.content, appenderHolder);
+      } else if (slot.indexOnly && slot.encodable != null) {
+        slot.index = Log.write(micros, slot.encodable, appenderHolder);
+      } else if (slot.string != null) {
+        slot.index = Log.write(micros, slot.string, appenderHolder);
+      } else if (slot.content != null) {
+        long index = Log.write(micros, slot.content, appenderHolder);
+        slot.log = Log.written(index, micros, slot.type, slot.keyHash, slot.content);
+      } else if (slot.encodable != null) {
+        long index = Log.write(micros, slot.encodable, appenderHolder);
+        slot.log = Log.written(index, micros, slot.type, slot.keyHash, null);
+      } else if (slot.buffer != null) {
+        slot.index = Log.write(micros, slot.buffer, appenderHolder);
+      } else if (slot.directBuffer != null) {
+        slot.index = Log.write(micros, slot.directBuffer, slot.offset, slot.length, appenderHolder);
+      } else if (slot.contents != null) {
+        slot.range = Log.writeBatch(micros, slot.contents, appenderHolder);
+      } else {
+        slot.range = Log.writeBatch(micros, slot.encodables, appenderHolder);
+      }
+    } catch (Throwable e) {
+      logger.warn("Could not append log", e);
+      slot.failure = e;
+    } finally {
+      appenderHolder.meta(0, 0);
+    }
+    slot.done = slot.published;
+    Thread waiter = slot.waiter;
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  private static int backoff(int spins) {
+    if (spins < SPINS) {
+      return spins + 1;
+    }
+    if (spins < YIELDS) {
+      // give the drainer a chance to run when cores are oversubscribed
+      Thread.yield();
+      return spins + 1;
+    }
+    LockSupport.parkNanos(PARK_NANOS);
+    return spins;
+  }
+
+  /**
+   * Wait for the drainer to append every slot claimed so far, like before the
+   * appenders of a stream are closed while the ring keep running.
+   */
+  void flush() {
+    long target = claimed.get();
+    int spins = 0;
+    while (drained < target && drainer.isAlive()) {
+      spins = backoff(spins);
+    }
+  }
+
+  /**
+   * Stop accepting new writes and wait for the drainer to append what have
+   * already been claimed.
+   */
+  void close() {
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private final class Slot {
+    /** sequence that may claim this slot next */
+    volatile long available;
+    /** sequence published by the producer */
+    volatile long published = -1;
+    /** sequence appended by the drainer */
+    volatile long done = -1;
+    volatile Thread waiter;
+    /** sequence of the producer currently owning the slot */
+    long sequence;
+    /** appender the slot is written to */
+    AppenderHolder holder;
+    byte[] content;
+    String string;
+    Encodable encodable;
+    /** append without creating a log object */
+    boolean indexOnly;
+    int type;
+    int keyHash;
+    ByteBuffer buffer;
+    DirectBuffer directBuffer;
+    int offset;
+    int length;
+    List<byte[]> contents;
+    Collection<? extends Encodable> encodables;
+    Log log;
+    long index;
+    Range range;
+    Throwable failure;
+
+    Slot(long available) {
+      this.available = available;
+    }
+
+    void await() throws IOException {
+      int spins = 0;
+      while (done != sequence) {
+        if (!drainer.isAlive() && done != sequence) {
+          // hand the slot over so that the producer one lap ahead is not stuck in claim
+          release();
+          throw new IOException("Log buffer is closed");
+        }
+        spins = backoff(spins);
+      }
+      Throwable e = failure;
+      if (e != null) {
+        release();
+        if (e instanceof RuntimeException) {
+          throw (RuntimeException) e;
+        }
+        throw new IOException(e);
+      }
+    }
+
+    /**
+     * Hand the slot over to the producer one lap ahead.
+     */
+    void release() {
+      content = null;
+      string = null;
+      encodable = null;
+      indexOnly = false;
+      type = 0;
+      keyHash = 0;
+      buffer = null;
+      directBuffer = null;
+      contents = null;
+      encodables = null;
+      log = null;
+      range = null;
+      failure = null;
+      waiter = null;
+      holder = null;
+      available = sequence + slots.length;
+    }
+  }
+}
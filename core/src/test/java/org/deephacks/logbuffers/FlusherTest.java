@@ -0,0 +1,75 @@
+package org.deephacks.logbuffers;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlusherTest {
+
+  @Test
+  public void testParkWhenNothingPending() throws Exception {
+    AtomicInteger forces = new AtomicInteger();
+    Flusher flusher = new Flusher(() -> {
+      forces.incrementAndGet();
+      return null;
+    }, TimeUnit.MILLISECONDS.toNanos(1), 100, Durability.none());
+    try {
+      assertThat(flusher.register(1).get(10, TimeUnit.SECONDS), is(1L));
+      assertThat(forces.get(), is(1));
+      awaitWaiting(flusher.thread);
+      assertThat(flusher.register(2).get(10, TimeUnit.SECONDS), is(2L));
+      assertThat(forces.get(), is(2));
+      awaitWaiting(flusher.thread);
+    } finally {
+      flusher.close();
+    }
+  }
+
+  @Test
+  public void testIntervalPolicyForceWhenDue() throws Exception {
+    AtomicInteger forces = new AtomicInteger();
+    Flusher flusher = new Flusher(() -> {
+      forces.incrementAndGet();
+      return null;
+    }, TimeUnit.MILLISECONDS.toNanos(1), 100, Durability.interval(10, TimeUnit.MILLISECONDS));
+    try {
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (forces.get() < 3) {
+        assertTrue("interval policy was never forced", System.currentTimeMillis() < deadline);
+        Thread.sleep(1);
+      }
+    } finally {
+      flusher.close();
+    }
+  }
+
+  @Test
+  public void testRegisterAfterClose() throws Exception {
+    Flusher flusher = new Flusher(() -> null, TimeUnit.MILLISECONDS.toNanos(1), 100, Durability.none());
+    flusher.close();
+    CompletableFuture<Long> future = flusher.register(1);
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      fail("write registered after close should fail");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  private static void awaitWaiting(Thread thread) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    // parked without a timeout, not waking up every interval
+    while (thread.getState() != Thread.State.WAITING) {
+      assertTrue("flusher never went idle", System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package org.deephacks.logbuffers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferAllocationTest {
+  static final int WARMUP = 20_000;
+  static final int WRITES = 100_000;
+  /** total for all writes, far less than a single byte per write */
+  static final long MAX_ALLOCATED_BYTES = 1024;
+  LogBuffer logBuffer;
+  com.sun.management.ThreadMXBean threads;
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogBuffer.newBuilder()
+      .hourly()
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testAppendBytes() throws Exception {
+    byte[] content = LogUtil.randomLog();
+    for (int i = 0; i < WARMUP; i++) {
+      logBuffer.append(content);
+    }
+    long before = allocatedBytes();
+    for (int i = 0; i < WRITES; i++) {
+      logBuffer.append(content);
+    }
+    long allocated = allocatedBytes() - before;
+    assertTrue("allocated " + allocated + " bytes in " + WRITES + " writes", allocated <= MAX_ALLOCATED_BYTES);
+  }
+
+  @Test
+  public void testAppendString() throws Exception {
+    String content = "åäö € 😀 " + LogUtil.randomLog().length;
+    long index = logBuffer.append(content);
+    assertThat(logBuffer.getIndex(index).get().getUtf8(), is(content));
+    for (int i = 0; i < WARMUP; i++) {
+      logBuffer.append(content);
+    }
+    long before = allocatedBytes();
+    for (int i = 0; i < WRITES; i++) {
+      logBuffer.append(content);
+    }
+    long allocated = allocatedBytes() - before;
+    assertTrue("allocated " + allocated + " bytes in " + WRITES + " writes", allocated <= MAX_ALLOCATED_BYTES);
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    byte[] content = LogUtil.randomLog();
+    long first = logBuffer.append(content);
+    for (int i = 1; i < WRITES; i++) {
+      logBuffer.append(content);
+    }
+    Query query = Query.atLeastIndex(first);
+    LongAdder bytes = new LongAdder();
+    LongAdder firstBytes = new LongAdder();
+    Consumer<LogCursor> consumer = cursor -> {
+      bytes.add(cursor.getLength());
+      firstBytes.add(cursor.getBuffer().getByte(0));
+    };
+    for (int i = 0; i < 5; i++) {
+      logBuffer.scan(query, consumer);
+    }
+    bytes.reset();
+    firstBytes.reset();
+    long before = allocatedBytes();
+    logBuffer.scan(query, consumer);
+    long allocated = allocatedBytes() - before;
+    assertThat(bytes.sum(), is((long) WRITES * content.length));
+    assertThat(firstBytes.sum(), is((long) WRITES * content[0]));
+    assertTrue("allocated " + allocated + " bytes in a scan of " + WRITES + " logs", allocated <= MAX_ALLOCATED_BYTES);
+  }
+
+  private long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
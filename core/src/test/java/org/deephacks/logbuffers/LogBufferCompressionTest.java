@@ -0,0 +1,115 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.vals.DirectBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferCompressionTest {
+  LogBuffer logBuffer;
+  String basePath;
+
+  @Before
+  public void before() throws IOException {
+    this.basePath = LogUtil.cleanupTmpDir();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .codec(Codec.LZ)
+      .basePath(basePath).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testLzRoundTrip() {
+    Random random = new Random(7);
+    int[] table = Lz.newTable();
+    for (int length : new int[] {0, 1, 5, 13, 15, 16, 19, 270, 271, 530, 4096, 70_000}) {
+      assertRoundTrip(randomBytes(random, length), table);
+      byte[] repetitive = new byte[length];
+      for (int i = 0; i < length; i++) {
+        repetitive[i] = (byte) (i % 7);
+      }
+      assertRoundTrip(repetitive, table);
+    }
+  }
+
+  @Test
+  public void testWriteRead() throws IOException {
+    byte[] repetitive = repetitive(4096);
+    byte[] random = randomBytes(new Random(3), 512);
+    String text = "payload " + new String(repetitive(200)) + " åäö";
+    long i1 = logBuffer.write(repetitive).getIndex();
+    long i2 = logBuffer.append(random);
+    long i3 = logBuffer.append(text);
+    long i4 = logBuffer.append(ByteBuffer.wrap(repetitive).asReadOnlyBuffer());
+    long i5 = logBuffer.append(new DirectBuffer(repetitive), 10, 1000);
+
+    assertArrayEquals(logBuffer.getIndex(i1).get().getContent(), repetitive);
+    assertArrayEquals(logBuffer.getIndex(i2).get().getContent(), random);
+    assertThat(logBuffer.getIndex(i3).get().getUtf8(), is(text));
+    assertArrayEquals(logBuffer.getIndex(i4).get().getContent(), repetitive);
+    assertArrayEquals(logBuffer.getIndex(i5).get().getContent(), Arrays.copyOfRange(repetitive, 10, 1010));
+
+    List<byte[]> contents = logBuffer.find(Query.atLeastIndex(i1))
+      .stream()
+      .map(Log::getContent)
+      .collect(Collectors.toList());
+    assertThat(contents.size(), is(5));
+    assertArrayEquals(contents.get(0), repetitive);
+  }
+
+  @Test
+  public void testMixedCodecs() throws IOException {
+    byte[] content = repetitive(1024);
+    long i1 = logBuffer.write(content).getIndex();
+    logBuffer.close();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(basePath).build();
+    long i2 = logBuffer.write(content).getIndex();
+    List<byte[]> contents = logBuffer.find(Query.closedIndex(i1, i2))
+      .stream()
+      .map(Log::getContent)
+      .collect(Collectors.toList());
+    assertThat(contents.size(), is(2));
+    assertArrayEquals(contents.get(0), content);
+    assertArrayEquals(contents.get(1), content);
+  }
+
+  private static void assertRoundTrip(byte[] content, int[] table) {
+    DirectBuffer compressed = new DirectBuffer(new byte[Lz.maxCompressedLength(content.length)]);
+    int length = Lz.compress(new DirectBuffer(content), 0, content.length, compressed, 0, table);
+    assertTrue(length >= 0);
+    byte[] raw = new byte[content.length];
+    Lz.decompress(compressed, 0, length, new DirectBuffer(raw), 0, content.length);
+    assertArrayEquals(content, raw);
+  }
+
+  private static byte[] repetitive(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) ('a' + i % 13);
+    }
+    return bytes;
+  }
+
+  private static byte[] randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,116 @@
+package org.deephacks.logbuffers;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferContentFilterTest {
+  static final int LOGS = 20_000;
+  LogBuffer logBuffer;
+  long first;
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testPrefix() throws Exception {
+    write(Codec.NONE);
+    Query query = Query.atLeastIndex(first).withContentPrefix("error");
+    assertThat(utf8(query), is(expected(i -> i % 1000 == 0, "error-")));
+    assertThat(utf8(query.reversed()).size(), is(LOGS / 1000));
+    assertThat(utf8(Query.atLeastIndex(first).withContentPrefix("error-1000-and-more")).size(), is(0));
+    assertThat(utf8(Query.atLeastIndex(first).withContentPrefix("")).size(), is(LOGS));
+  }
+
+  @Test
+  public void testContaining() throws Exception {
+    write(Codec.NONE);
+    assertThat(utf8(Query.atLeastIndex(first).withContentContaining("-1999")), is(expected(i -> ("-" + i).contains("-1999"), "info-")));
+    assertThat(utf8(Query.atLeastIndex(first).withContentContaining("5-")), is(listOf()));
+    assertThat(utf8(Query.atLeastIndex(first).withContentContaining("o-12345")), is(listOf("info-12345")));
+    // combined with header filters and other content filters
+    Query query = Query.atLeastIndex(first).withRecordType(2).withContentPrefix("error").withContentContaining("00");
+    assertThat(utf8(query), is(expected(i -> i > 0, "error-")));
+  }
+
+  @Test
+  public void testPredicate() throws Exception {
+    write(Codec.NONE);
+    List<String> logs = utf8(Query.atLeastIndex(first)
+      .withContent(content -> content.capacity() > 0 && content.getByte(content.capacity() - 1) == '7'));
+    assertThat(logs, is(expected(i -> i % 10 == 7, "info-")));
+  }
+
+  @Test
+  public void testCompressed() throws Exception {
+    write(Codec.LZ);
+    assertThat(utf8(Query.atLeastIndex(first).withContentPrefix("error")), is(expected(i -> i % 1000 == 0, "error-")));
+    assertThat(utf8(Query.atLeastIndex(first).withContentContaining("-1999")), is(expected(i -> ("-" + i).contains("-1999"), "info-")));
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    write(Codec.NONE);
+    List<String> logs = new ArrayList<>();
+    logBuffer.scan(Query.atLeastIndex(first).withContentPrefix("error"), cursor -> logs.add(cursor.getUtf8()));
+    assertThat(logs, is(expected(i -> i % 1000 == 0, "error-")));
+  }
+
+  @Test
+  public void testNoAllocationForFilteredLogs() throws Exception {
+    write(Codec.NONE);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    threads.setThreadAllocatedMemoryEnabled(true);
+    Query query = Query.atLeastIndex(first).withContentContaining("does not exist");
+    // warm up
+    for (int i = 0; i < 5; i++) {
+      assertThat(logBuffer.find(query).stream().count(), is(0L));
+    }
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    logBuffer.find(query).stream().count();
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+    assertTrue("allocated " + allocated, allocated / LOGS == 0);
+  }
+
+  private void write(Codec codec) throws IOException {
+    logBuffer = LogBuffer.newBuilder()
+      .hourly()
+      .codec(codec)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    for (int i = 0; i < LOGS; i++) {
+      boolean error = i % 1000 == 0;
+      long index = logBuffer.write(error ? 2 : 1, 0, ((error ? "error-" : "info-") + i).getBytes()).getIndex();
+      if (i == 0) {
+        first = index;
+      }
+    }
+  }
+
+  private List<String> utf8(Query query) {
+    return logBuffer.find(query).stream().map(Log::getUtf8).collect(Collectors.toList());
+  }
+
+  private static List<String> expected(java.util.function.IntPredicate match, String prefix) {
+    List<String> logs = new ArrayList<>();
+    for (int i = 0; i < LOGS; i++) {
+      if (match.test(i) && (prefix.equals("error-") == (i % 1000 == 0))) {
+        logs.add(prefix + i);
+      }
+    }
+    return logs;
+  }
+
+  private static List<String> listOf(String... logs) {
+    return java.util.Arrays.asList(logs);
+  }
+}
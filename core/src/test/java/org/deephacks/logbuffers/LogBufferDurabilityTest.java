@@ -0,0 +1,107 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogBufferTest.TailLog;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferDurabilityTest {
+  LogBuffer logBuffer;
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testRecords() throws Exception {
+    logBuffer = newBuffer(Durability.records(3));
+    TailLog tail = new TailLog();
+    TailSchedule schedule = TailSchedule.builder(tail).durableOnly(true).build();
+    logBuffer.append(LogUtil.randomLog());
+    long i2 = logBuffer.append(LogUtil.randomLog());
+    // not forced until the third write
+    assertThat(logBuffer.getDurableIndex(), is(-1L));
+    logBuffer.forward(schedule);
+    assertThat(tail.logs.size(), is(0));
+
+    long i3 = logBuffer.append(LogUtil.randomLog());
+    awaitDurable(i3);
+    long i4 = logBuffer.append(LogUtil.randomLog());
+    logBuffer.forward(schedule);
+    assertThat(tail.logs.size(), is(3));
+    assertThat(tail.logs.get(1).getIndex(), is(i2));
+    assertThat(tail.logs.get(2).getIndex(), is(i3));
+    assertTrue(logBuffer.getDurableIndex() < i4);
+  }
+
+  @Test
+  public void testInterval() throws Exception {
+    logBuffer = newBuffer(Durability.interval(10, TimeUnit.MILLISECONDS));
+    long i1 = logBuffer.append(LogUtil.randomLog());
+    awaitDurable(i1);
+    long i2 = logBuffer.append(LogUtil.randomLog());
+    awaitDurable(i2);
+  }
+
+  @Test
+  public void testPerWrite() throws Exception {
+    logBuffer = newBuffer(Durability.perWrite());
+    long index = logBuffer.append(LogUtil.randomLog());
+    assertThat(logBuffer.getDurableIndex(), is(index));
+  }
+
+  @Test
+  public void testNone() throws Exception {
+    logBuffer = newBuffer(Durability.none());
+    logBuffer.append(LogUtil.randomLog());
+    assertThat(logBuffer.getDurableIndex(), is(-1L));
+    // asynchronous writes are still forced
+    long index = logBuffer.writeAsync(LogUtil.randomLog()).get(10, TimeUnit.SECONDS);
+    assertThat(logBuffer.getDurableIndex(), is(index));
+  }
+
+  @Test
+  public void testDurableOnlyTailRequireForcedWrites() throws Exception {
+    logBuffer = newBuffer(Durability.none());
+    TailSchedule schedule = TailSchedule.builder(new TailLog()).durableOnly(true).build();
+    try {
+      logBuffer.forward(schedule);
+      fail("durable only tail should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      logBuffer.forwardWithFixedDelay(schedule);
+      fail("durable only tail should be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    // tails that process all logs are fine
+    logBuffer.append(LogUtil.randomLog());
+    TailLog tail = new TailLog();
+    logBuffer.forward(TailSchedule.builder(tail).build());
+    assertThat(tail.logs.size(), is(1));
+  }
+
+  private LogBuffer newBuffer(Durability durability) throws IOException {
+    return LogBuffer.newBuilder()
+      .secondly()
+      .durability(durability)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+  }
+
+  private void awaitDurable(long index) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (logBuffer.getDurableIndex() < index) {
+      assertTrue("index " + index + " was never forced", System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+    assertThat(logBuffer.getDurableIndex(), is(index));
+  }
+}
@@ -0,0 +1,155 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferLastTest {
+  LogBuffer logBuffer;
+  FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testLastWithinInterval() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 3, 100);
+    assertThat(find(Query.last(5)), is(Arrays.asList("2-95", "2-96", "2-97", "2-98", "2-99")));
+    assertThat(find(Query.last(1)), is(Arrays.asList("2-99")));
+  }
+
+  @Test
+  public void testLastAcrossIntervals() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 3, 100);
+    List<String> last = find(Query.last(150));
+    assertThat(last.size(), is(150));
+    assertThat(last.get(0), is("1-50"));
+    assertThat(last.get(149), is("2-99"));
+    assertThat(last, is(find(Query.atLeastIndex(0)).subList(150, 300)));
+    // more than written
+    assertThat(find(Query.last(1000)), is(find(Query.atLeastIndex(0))));
+  }
+
+  @Test
+  public void testLastReversed() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 2, 10);
+    assertThat(find(Query.last(3).reversed()), is(Arrays.asList("1-9", "1-8", "1-7")));
+  }
+
+  @Test
+  public void testLastBefore() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 3, 100);
+    // logs are written every 10 ms
+    assertThat(find(Query.lastBefore(clock.startMs + 1025, 3)), is(Arrays.asList("1-0", "1-1", "1-2")));
+    List<String> last = find(Query.lastBefore(clock.startMs + 1005, 10));
+    assertThat(last.get(0), is("0-91"));
+    assertThat(last.get(9), is("1-0"));
+    assertTrue(find(Query.lastBefore(clock.startMs - 1, 10)).isEmpty());
+  }
+
+  @Test
+  public void testLastWithFilter() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      clock.set(clock.startMicros + i * 10_000L);
+      logBuffer.write(i % 2, i, "log-" + i);
+    }
+    assertThat(find(Query.last(3).withRecordType(0)), is(Arrays.asList("log-94", "log-96", "log-98")));
+    assertThat(find(Query.last(2).withContentPrefix("log-1")), is(Arrays.asList("log-18", "log-19")));
+  }
+
+  @Test
+  public void testLastAcrossMissingInterval() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 1, 10);
+    // no logs written in the second interval
+    clock.set(clock.startMicros + 2_000_000L);
+    logBuffer.write("2-0");
+    assertThat(find(Query.last(3)), is(Arrays.asList("0-8", "0-9", "2-0")));
+  }
+
+  @Test
+  public void testLastOfEmptyBuffer() throws Exception {
+    assertTrue(find(Query.last(10)).isEmpty());
+    assertTrue(logBuffer.stats(Query.last(10)).isEmpty());
+    List<Long> scanned = new ArrayList<>();
+    logBuffer.scan(Query.last(10), cursor -> scanned.add(cursor.getIndex()));
+    assertTrue(scanned.isEmpty());
+  }
+
+  @Test
+  public void testLastScanStatsAndParallel() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 3, 100);
+    List<Long> scanned = new ArrayList<>();
+    logBuffer.scan(Query.last(120), cursor -> scanned.add(cursor.getIndex()));
+    List<Long> indexes = logBuffer.find(Query.last(120)).stream().map(Log::getIndex).collect(Collectors.toList());
+    assertThat(scanned, is(indexes));
+    assertThat(LogStats.sum(logBuffer.stats(Query.last(120))).getCount(), is(120L));
+    assertThat(logBuffer.findParallel(Query.last(120)).stream().map(Log::getUtf8).collect(Collectors.toList()),
+      is(find(Query.last(120))));
+  }
+
+  @Test
+  public void testLastOfStripes() throws Exception {
+    logBuffer.close();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .stripes(4)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    // threads are spread over the stripes by their id
+    for (int second = 0; second < 2; second++) {
+      for (int i = 0; i < 100; i++) {
+        // pairs of logs share a timestamp
+        clock.set(clock.startMicros + second * 1_000_000L + (i / 2) * 10_000L);
+        String content = second + "-" + i;
+        Thread thread = new Thread(() -> {
+          try {
+            logBuffer.write(content);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        });
+        thread.start();
+        thread.join();
+      }
+    }
+    List<String> all = find(Query.atLeastIndex(0));
+    assertThat(all.size(), is(200));
+    for (int n : new int[] {1, 3, 50, 101, 150, 500}) {
+      List<String> last = find(Query.last(n));
+      assertThat(last, is(all.subList(Math.max(0, all.size() - n), all.size())));
+      assertThat(LogStats.sum(logBuffer.stats(Query.last(n))).getCount(), is((long) Math.min(n, all.size())));
+    }
+    List<String> atMost = find(Query.closedTime(clock.startMs, clock.startMs + 1000));
+    assertThat(find(Query.lastBefore(clock.startMs + 1000, 5)), is(atMost.subList(atMost.size() - 5, atMost.size())));
+    List<String> reversed = find(Query.last(7).reversed());
+    Collections.reverse(reversed);
+    assertThat(reversed, is(all.subList(all.size() - 7, all.size())));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLastMustBePositive() {
+    Query.last(0);
+  }
+
+  private List<String> find(Query query) {
+    return logBuffer.find(query).stream().map(Log::getUtf8).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,138 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferManifestTest {
+  static final int INTERVALS = 3;
+  static final int LOGS_PER_INTERVAL = 100;
+  LogBuffer logBuffer;
+  String basePath;
+  FakeClock clock = LogUtil.fakeClock(20, TimeUnit.SECONDS);
+  long[] lastIndexes = new long[INTERVALS];
+
+  @Before
+  public void before() throws IOException {
+    basePath = LogUtil.cleanupTmpDir();
+    logBuffer = newBuffer();
+    for (int second = 0; second < INTERVALS; second++) {
+      for (int i = 0; i < LOGS_PER_INTERVAL; i++) {
+        clock.set(clock.startMicros + second * 1_000_000L + i * 1000L);
+        lastIndexes[second] = logBuffer.append(second + "-" + i);
+      }
+    }
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testManifestListIntervals() throws Exception {
+    List<Manifest.Entry> entries = new Manifest.Reader(new File(basePath)).readNew();
+    List<Manifest.Entry> opened = entries.stream().filter(e -> e.lastIndex == -1).collect(Collectors.toList());
+    List<Manifest.Entry> closed = entries.stream().filter(e -> e.lastIndex != -1).collect(Collectors.toList());
+    RollingRanges ranges = RollingRanges.secondly();
+    assertThat(opened.size(), is(INTERVALS));
+    for (int second = 0; second < INTERVALS; second++) {
+      long time = clock.startMs + second * 1000;
+      assertThat(opened.get(second).name, is(ranges.formatTime(time)));
+      assertThat(opened.get(second).startIndex, is(ranges.startIndexForTime(time)));
+      assertThat(opened.get(second).timeRange.start(), is(time));
+      assertThat(opened.get(second).stripes, is(1));
+    }
+    // the last interval is closed with the buffer
+    assertThat(closed.size(), is(INTERVALS - 1));
+    assertThat(closed.get(0).lastIndex, is(lastIndexes[0]));
+    assertThat(closed.get(1).lastIndex, is(lastIndexes[1]));
+  }
+
+  @Test
+  public void testReaderUseManifest() throws Exception {
+    // a directory that is only found by listing the base path
+    assertTrue(new File(basePath, RollingRanges.secondly().formatTime(clock.startMs - 5000)).mkdirs());
+    LogBuffer reader = newBuffer();
+    try {
+      assertThat(reader.initalizeDirs().size(), is(INTERVALS));
+      assertThat(reader.find(Query.atLeastIndex(0)).stream().count(), is((long) INTERVALS * LOGS_PER_INTERVAL));
+
+      // new intervals are picked up by reversed queries
+      clock.set(clock.startMicros + INTERVALS * 1_000_000L);
+      logBuffer.append("last");
+      Log last = reader.find(Query.closedTime(clock.startMs, clock.startMs + 10_000).reversed()).stream().findFirst().get();
+      assertThat(last.getUtf8(), is("last"));
+      assertThat(reader.initalizeDirs().size(), is(INTERVALS + 1));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testListBasePathWithoutManifest() throws Exception {
+    assertTrue(new File(basePath, RollingRanges.secondly().formatTime(clock.startMs - 5000)).mkdirs());
+    assertTrue(new File(basePath, Manifest.FILE_NAME).delete());
+    LogBuffer reader = newBuffer();
+    try {
+      assertThat(reader.initalizeDirs().size(), is(INTERVALS + 1));
+      assertThat(reader.find(Query.atLeastIndex(0)).stream().count(), is((long) INTERVALS * LOGS_PER_INTERVAL));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testSeedExistingIntervals() throws Exception {
+    logBuffer.close();
+    assertTrue(new File(basePath, Manifest.FILE_NAME).delete());
+    logBuffer = newBuffer();
+    clock.set(clock.startMicros + INTERVALS * 1_000_000L);
+    logBuffer.append("last");
+    List<String> names = new Manifest.Reader(new File(basePath)).readNew().stream()
+      .map(e -> e.name).distinct().sorted().collect(Collectors.toList());
+    assertThat(names.size(), is(INTERVALS + 1));
+    assertThat(names.get(0), is(RollingRanges.secondly().formatTime(clock.startMs)));
+    LogBuffer reader = newBuffer();
+    try {
+      assertThat(reader.find(Query.atLeastIndex(0)).stream().count(), is((long) INTERVALS * LOGS_PER_INTERVAL + 1));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testManifestOfOtherInterval() throws Exception {
+    logBuffer.close();
+    logBuffer = LogBuffer.newBuilder()
+      .minutely()
+      .clock(clock)
+      .basePath(basePath).build();
+    logBuffer.append("minute");
+    // not updated by a buffer with another interval
+    List<Manifest.Entry> entries = new Manifest.Reader(new File(basePath)).readNew();
+    assertTrue(entries.stream().allMatch(e -> e.timeRange.stop() - e.timeRange.start() == 999));
+    // readers only see intervals of the manifest
+    LogBuffer reader = newBuffer();
+    try {
+      assertThat(reader.find(Query.atLeastIndex(0)).stream().count(), is((long) INTERVALS * LOGS_PER_INTERVAL));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private LogBuffer newBuffer() throws IOException {
+    return LogUtil.fakeClockBuilder(clock)
+      .basePath(basePath).build();
+  }
+}
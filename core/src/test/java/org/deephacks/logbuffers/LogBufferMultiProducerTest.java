@@ -0,0 +1,121 @@
+package org.deephacks.logbuffers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferMultiProducerTest {
+  LogBuffer logBuffer;
+  int numThreads = 16;
+  int numLogsPerThread = 20_000;
+  String path;
+
+  @Before
+  public void before() throws IOException {
+    this.path = LogUtil.cleanupTmpDir();
+    logBuffer = LogBuffer.newBuilder()
+      .hourly()
+      .multiProducer(1024)
+      .basePath(path).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Log> written = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      executor.submit(() -> {
+        try {
+          for (int j = 0; j < numLogsPerThread; j++) {
+            written.add(logBuffer.write(LogUtil.randomLog()));
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    executor.shutdown();
+    int numLogs = numThreads * numLogsPerThread;
+    assertThat(written.size(), is(numLogs));
+
+    // indexes are unique and timestamps follow index order
+    List<Log> sorted = new ArrayList<>(written);
+    Collections.sort(sorted);
+    for (int i = 1; i < sorted.size(); i++) {
+      assertTrue(sorted.get(i - 1).getIndex() < sorted.get(i).getIndex());
+      assertTrue(sorted.get(i - 1).getTimestamp() <= sorted.get(i).getTimestamp());
+    }
+
+    List<Log> read = logBuffer.find(Query.atLeastIndex(0)).toArrayList();
+    assertThat(read.size(), is(numLogs));
+    for (int i = 0; i < numLogs; i++) {
+      assertThat(read.get(i).getIndex(), is(sorted.get(i).getIndex()));
+      assertArrayEquals(read.get(i).getContent(), sorted.get(i).getContent());
+    }
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    Log first = logBuffer.write("1");
+    Range range = logBuffer.writeBatch(Arrays.asList("2".getBytes(), "3".getBytes()));
+    Log last = logBuffer.write("4");
+    assertTrue(first.getIndex() < range.start());
+    assertTrue(range.stop() < last.getIndex());
+    List<String> read = logBuffer.find(Query.atLeastIndex(0)).stream()
+      .map(Log::getUtf8).collect(Collectors.toList());
+    assertThat(read, is(Arrays.asList("1", "2", "3", "4")));
+  }
+
+  @Test
+  public void testWriteAfterClose() throws Exception {
+    logBuffer.write("1");
+    logBuffer.close();
+    try {
+      logBuffer.write("2");
+      fail("closed buffer should not accept writes");
+    } catch (IOException e) {
+      // expected
+    }
+    logBuffer = LogBuffer.newBuilder()
+      .hourly()
+      .multiProducer(1024)
+      .basePath(path).build();
+    assertThat(logBuffer.find(Query.atLeastIndex(0)).stream().count(), is(1L));
+  }
+
+  @Test(timeout = 60_000)
+  public void testFailFastWhenDrainerDied() throws Exception {
+    WriteRing ring = new WriteRing(2, Clock.system());
+    // a null appender kills the drainer, every write after it must fail instead of spinning
+    for (int i = 0; i < 5; i++) {
+      try {
+        ring.append(null, LogUtil.randomLog());
+        fail("write without a drainer should fail");
+      } catch (IOException e) {
+        assertThat(e.getMessage(), is("Log buffer is closed"));
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferReadAheadTest {
+  static final int INTERVALS = 6;
+  static final int LOGS_PER_INTERVAL = 1000;
+  LogBuffer logBuffer;
+  FakeClock clock = LogUtil.fakeClock(20, TimeUnit.SECONDS);
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testReadAhead() throws Exception {
+    write(2);
+    Iterator<Log> logs = logBuffer.find(Query.atLeastIndex(0)).stream().iterator();
+    assertThat(logs.next().getUtf8(), is("0-0"));
+    // the first interval and two ahead of it
+    awaitOpen(3);
+    Thread.sleep(100);
+    assertThat(logBuffer.getReaderCacheStats().getOpen(), is(3));
+    int count = 1;
+    while (logs.hasNext()) {
+      logs.next();
+      count++;
+    }
+    assertThat(count, is(INTERVALS * LOGS_PER_INTERVAL));
+  }
+
+  @Test
+  public void testReadAheadReversed() throws Exception {
+    write(1);
+    Query query = Query.closedTime(clock.startMs, clock.startMs + INTERVALS * 1000).reversed();
+    Iterator<Log> logs = logBuffer.find(query).stream().iterator();
+    assertThat(logs.next().getUtf8(), is((INTERVALS - 1) + "-" + (LOGS_PER_INTERVAL - 1)));
+    awaitOpen(2);
+    List<String> all = logBuffer.find(query).stream().map(Log::getUtf8).collect(Collectors.toList());
+    assertThat(all.size(), is(INTERVALS * LOGS_PER_INTERVAL));
+  }
+
+  @Test
+  public void testReadAheadWithinQuery() throws Exception {
+    write(3);
+    Query query = Query.closedTime(clock.startMs + 1000, clock.startMs + 2999);
+    assertThat(logBuffer.find(query).stream().count(), is(2L * LOGS_PER_INTERVAL));
+    Thread.sleep(200);
+    // intervals after the query are not read ahead
+    assertThat(logBuffer.getReaderCacheStats().getOpen(), is(2));
+  }
+
+  @Test
+  public void testReadAheadOffByDefault() throws Exception {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .readersMaxRollingFiles(INTERVALS)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    for (int second = 0; second < 2; second++) {
+      clock.set(clock.startMicros + second * 1_000_000L);
+      logBuffer.append(second + "-0");
+    }
+    assertThat(logBuffer.find(Query.atLeastIndex(0)).stream().iterator().next().getUtf8(), is("0-0"));
+    Thread.sleep(200);
+    assertThat(logBuffer.getReaderCacheStats().getOpen(), is(1));
+  }
+
+  @Test
+  public void testNoReadAheadWhenCacheIsFull() throws Exception {
+    write(2, 1);
+    Iterator<Log> logs = logBuffer.find(Query.atLeastIndex(0)).stream().iterator();
+    assertThat(logs.next().getUtf8(), is("0-0"));
+    Thread.sleep(200);
+    // the interval that is read is never evicted by read ahead
+    CacheStats stats = logBuffer.getReaderCacheStats();
+    assertThat(stats.getOpen(), is(1));
+    assertThat(stats.getEvictions(), is(0L));
+  }
+
+  @Test
+  public void testReadAheadAgainAfterClose() throws Exception {
+    write(1);
+    assertThat(logBuffer.find(Query.atLeastIndex(0)).stream().count(), is((long) INTERVALS * LOGS_PER_INTERVAL));
+    List<Dirs.Dir> dirs = new ArrayList<>(logBuffer.dirs.listDirs());
+    assertTrue(dirs.get(1).readAheadScheduled);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    for (Dirs.Dir dir : dirs) {
+      // pinned while read ahead is still in progress
+      while (!dir.tryClose()) {
+        assertTrue(System.nanoTime() < deadline);
+        Thread.sleep(10);
+      }
+      assertFalse(dir.readAheadScheduled);
+    }
+    Iterator<Log> logs = logBuffer.find(Query.atLeastIndex(0)).stream().iterator();
+    assertThat(logs.next().getUtf8(), is("0-0"));
+    while (!dirs.get(1).isOpen() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(dirs.get(1).isOpen());
+  }
+
+  @Test
+  public void testNoReadAhead() throws Exception {
+    write(0);
+    Iterator<Log> logs = logBuffer.find(Query.atLeastIndex(0)).stream().iterator();
+    assertThat(logs.next().getUtf8(), is("0-0"));
+    Thread.sleep(200);
+    assertThat(logBuffer.getReaderCacheStats().getOpen(), is(1));
+  }
+
+  private void write(int readAhead) throws IOException {
+    write(readAhead, INTERVALS * 2);
+  }
+
+  private void write(int readAhead, int readersMaxRollingFiles) throws IOException {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .readAhead(readAhead)
+      .readersMaxRollingFiles(readersMaxRollingFiles)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    for (int second = 0; second < INTERVALS; second++) {
+      for (int i = 0; i < LOGS_PER_INTERVAL; i++) {
+        clock.set(clock.startMicros + second * 1_000_000L + i * 100L);
+        logBuffer.append(second + "-" + i);
+      }
+    }
+  }
+
+  private void awaitOpen(int open) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (logBuffer.getReaderCacheStats().getOpen() < open && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(logBuffer.getReaderCacheStats().getOpen(), is(open));
+  }
+}
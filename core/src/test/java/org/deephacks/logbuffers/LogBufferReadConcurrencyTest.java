@@ -0,0 +1,127 @@
+package org.deephacks.logbuffers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferReadConcurrencyTest {
+  LogBuffer logBuffer;
+  int numLogs = 100_000;
+  int numReaders = 8;
+  Map<Long, String> written = new HashMap<>();
+  long firstIndex;
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    for (int i = 0; i < numLogs; i++) {
+      String content = "log-" + i;
+      written.put(logBuffer.append(content), content);
+    }
+    firstIndex = written.keySet().stream().min(Long::compare).get();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testConcurrentFind() throws Exception {
+    List<Future<Integer>> results = readConcurrently(() -> {
+      int count = 0;
+      long previous = -1;
+      for (Log log : logBuffer.find(Query.atLeastIndex(firstIndex)).toLinkedList()) {
+        assertTrue(previous < log.getIndex());
+        assertThat(log.getUtf8(), is(written.get(log.getIndex())));
+        previous = log.getIndex();
+        count++;
+      }
+      return count;
+    });
+    for (Future<Integer> result : results) {
+      assertThat(result.get(1, TimeUnit.MINUTES), is(numLogs));
+    }
+  }
+
+  @Test
+  public void testConcurrentParallel() throws Exception {
+    List<Future<Integer>> results = readConcurrently(() ->
+      (int) logBuffer.parallel().stream()
+        .filter(log -> log.getUtf8().equals(written.get(log.getIndex())))
+        .count());
+    for (Future<Integer> result : results) {
+      assertThat(result.get(1, TimeUnit.MINUTES), is(numLogs));
+    }
+  }
+
+  @Test
+  public void testSharedLogsReadByManyThreads() throws Exception {
+    LinkedList<Log> logs = logBuffer.find(Query.atLeastIndex(firstIndex)).toLinkedList();
+    List<Log> shared = new ArrayList<>(logs);
+    List<Future<Integer>> results = readConcurrently(() -> {
+      int count = 0;
+      for (Log log : shared) {
+        // read the header from disk, content is cached by the first reader
+        assertTrue(log.getTimestamp() > 0);
+        assertThat(log.getRecordType(), is(0));
+        assertThat(log.getUtf8(), is(written.get(log.getIndex())));
+        count++;
+      }
+      return count;
+    });
+    for (Future<Integer> result : results) {
+      assertThat(result.get(1, TimeUnit.MINUTES), is(numLogs));
+    }
+  }
+
+  @Test
+  public void testTailersOfDeadThreadsReleased() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      Thread reader = new Thread(() -> {
+        for (Log log : logBuffer.find(Query.atLeastIndex(firstIndex)).toLinkedList()) {
+          assertThat(log.getUtf8(), is(written.get(log.getIndex())));
+        }
+      });
+      reader.start();
+      reader.join();
+    }
+    for (Dirs.Dir dir : logBuffer.initalizeDirs()) {
+      // only the tailer of the last reader is left until another thread read
+      assertTrue(dir.numTailers() <= 1);
+    }
+  }
+
+  private List<Future<Integer>> readConcurrently(Callable<Integer> reader) {
+    ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < numReaders; i++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        return reader.call();
+      }));
+    }
+    start.countDown();
+    executor.shutdown();
+    return results;
+  }
+}
@@ -0,0 +1,107 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferReaderCacheTest {
+  static final int INTERVALS = 10;
+  static final int LOGS_PER_INTERVAL = 500;
+  LogBuffer logBuffer;
+  FakeClock clock = LogUtil.fakeClock(20, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .readersMaxRollingFiles(3)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    for (int second = 0; second < INTERVALS; second++) {
+      for (int i = 0; i < LOGS_PER_INTERVAL; i++) {
+        clock.set(clock.startMicros + second * 1_000_000L + i * 1000L);
+        logBuffer.append(second + "-" + i);
+      }
+    }
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    Query query = Query.closedTime(clock.startMs, clock.startMs + INTERVALS * 1000);
+    assertThat(logBuffer.find(query).stream().count(), is((long) INTERVALS * LOGS_PER_INTERVAL));
+    CacheStats stats = logBuffer.getReaderCacheStats();
+    assertThat(stats.getMaxOpen(), is(3));
+    assertTrue(stats.getOpen() <= 3);
+    assertTrue(stats.getMisses() >= INTERVALS);
+    assertTrue(stats.getEvictions() >= INTERVALS - 3);
+    assertTrue(stats.getHits() > 0);
+
+    // evicted intervals are reopened
+    List<String> first = logBuffer.find(Query.closedTime(clock.startMs, clock.startMs + 999)).stream()
+      .map(Log::getUtf8)
+      .collect(Collectors.toList());
+    assertThat(first.size(), is(LOGS_PER_INTERVAL));
+    assertThat(first.get(0), is("0-0"));
+    assertTrue(logBuffer.getReaderCacheStats().getMisses() > stats.getMisses());
+  }
+
+  @Test
+  public void testReadAfterEviction() throws Exception {
+    Query query = Query.closedTime(clock.startMs, clock.startMs + INTERVALS * 1000);
+    List<Log> logs = logBuffer.find(query).toArrayList();
+    assertThat(logs.size(), is(INTERVALS * LOGS_PER_INTERVAL));
+    // the first intervals have been evicted when their content is read
+    for (int i = 0; i < logs.size(); i += 97) {
+      assertThat(logs.get(i).getUtf8(), is((i / LOGS_PER_INTERVAL) + "-" + (i % LOGS_PER_INTERVAL)));
+    }
+    assertTrue(logBuffer.getReaderCacheStats().getOpen() <= 3);
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 6; t++) {
+        long seed = t;
+        futures.add(executor.submit(() -> {
+          Random random = new Random(seed);
+          for (int n = 0; n < 200; n++) {
+            int second = random.nextInt(INTERVALS);
+            long from = clock.startMs + second * 1000L;
+            List<String> logs = logBuffer.find(Query.closedTime(from, from + 99)).stream()
+              .map(Log::getUtf8)
+              .collect(Collectors.toList());
+            assertThat(logs.size(), is(100));
+            assertThat(logs.get(99), is(second + "-99"));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    CacheStats stats = logBuffer.getReaderCacheStats();
+    assertTrue(stats.toString(), stats.getEvictions() > 0);
+  }
+}
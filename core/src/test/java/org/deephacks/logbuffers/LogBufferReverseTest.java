@@ -0,0 +1,111 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferReverseTest {
+  LogBuffer logBuffer;
+  FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testReversed() throws Exception {
+    long first = write(0, 3);
+    assertReversed(Query.atLeastIndex(first));
+    assertReversed(Query.closedIndex(first + 10, first + 1500));
+    assertReversed(Query.closedTime(clock.startMs + 100, clock.startMs + 2099));
+    assertReversed(Query.closedTime(clock.startMs + 1500, clock.startMs + 1500));
+    assertReversed(Query.atLeastTime(clock.startMs).withRecordType(1));
+    assertReversed(Query.atMostTime(clock.startMs + 2500).withKeyHash(3));
+    assertThat(Query.atLeastIndex(0).reversed().reversed().isReversed(), is(false));
+  }
+
+  @Test
+  public void testMostRecentFirst() throws Exception {
+    write(0, 2);
+    List<Log> logs = logBuffer.find(Query.atLeastTime(clock.startMs).reversed()).stream()
+      .limit(5)
+      .collect(Collectors.toList());
+    assertThat(logs.get(0).getUtf8(), is("1-999"));
+    assertThat(logs.get(4).getUtf8(), is("1-995"));
+
+    // directories created after the first query
+    write(2, 3);
+    Log last = logBuffer.find(Query.atLeastTime(clock.startMs).reversed()).stream().findFirst().get();
+    assertThat(last.getUtf8(), is("2-999"));
+  }
+
+  @Test
+  public void testReversedParallelAndScan() throws Exception {
+    long first = write(0, 3);
+    Query query = Query.atLeastIndex(first).reversed();
+    List<String> expected = contents(Query.atLeastIndex(first));
+    Collections.reverse(expected);
+    assertThat(logBuffer.findParallel(query).stream().map(Log::getUtf8).collect(Collectors.toList()), is(expected));
+    List<String> scanned = new ArrayList<>();
+    logBuffer.scan(query, cursor -> scanned.add(cursor.getUtf8()));
+    assertThat(scanned, is(expected));
+  }
+
+  @Test
+  public void testReversedStriped() throws Exception {
+    logBuffer.close();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .stripes(2)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    write(0, 3);
+    assertReversed(Query.closedTime(clock.startMs + 100, clock.startMs + 2099));
+  }
+
+  /**
+   * Write 1000 logs per interval, one log per milli.
+   */
+  private long write(int fromSecond, int toSecond) throws IOException {
+    long first = -1;
+    for (int second = fromSecond; second < toSecond; second++) {
+      for (int i = 0; i < 1000; i++) {
+        clock.set(clock.startMicros + second * 1_000_000L + i * 1000L);
+        long index = logBuffer.write(i % 2, i % 7, second + "-" + i).getIndex();
+        if (first == -1) {
+          first = index;
+        }
+      }
+    }
+    return first;
+  }
+
+  private void assertReversed(Query query) {
+    List<String> expected = contents(query);
+    Collections.reverse(expected);
+    assertTrue(expected.size() > 0);
+    assertThat(contents(query.reversed()), is(expected));
+  }
+
+  private List<String> contents(Query query) {
+    return logBuffer.find(query).stream()
+      .map(Log::getUtf8)
+      .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,108 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferScanTest {
+  LogBuffer logBuffer;
+  String basePath;
+  FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    this.basePath = LogUtil.cleanupTmpDir();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .basePath(basePath).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testScanEqualsFind() throws Exception {
+    long first = write(logBuffer);
+    assertScanEqualsFind(Query.atLeastIndex(first));
+    assertScanEqualsFind(Query.closedIndex(first + 10, first + 500));
+    assertScanEqualsFind(Query.closedTime(clock.startMs + 100, clock.startMs + 1099));
+    assertScanEqualsFind(Query.atLeastIndex(first).withRecordType(2));
+    assertScanEqualsFind(Query.closedTime(clock.startMs, clock.startMs + 3000).withKeyHash(7));
+  }
+
+  @Test
+  public void testCursorIsReused() throws Exception {
+    long first = write(logBuffer);
+    Set<LogCursor> cursors = new HashSet<>();
+    List<Long> timestamps = new ArrayList<>();
+    logBuffer.scan(Query.closedIndex(first, first + 2), cursor -> {
+      cursors.add(cursor);
+      timestamps.add(cursor.getTimestampMicros());
+    });
+    assertThat(cursors.size(), is(1));
+    assertThat(timestamps.size(), is(3));
+    assertThat(timestamps.get(1), is(clock.startMicros + 1000));
+  }
+
+  @Test
+  public void testScanCompressed() throws Exception {
+    logBuffer.close();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .codec(Codec.LZ)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    long first = write(logBuffer);
+    assertScanEqualsFind(Query.atLeastIndex(first));
+  }
+
+  @Test
+  public void testScanStriped() throws Exception {
+    logBuffer.close();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .stripes(2)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    write(logBuffer);
+    assertScanEqualsFind(Query.closedTime(clock.startMs, clock.startMs + 3000));
+  }
+
+  /**
+   * Write 3000 logs over 3 intervals, one log per milli.
+   */
+  private long write(LogBuffer logBuffer) throws IOException {
+    long first = -1;
+    for (int i = 0; i < 3000; i++) {
+      clock.set(clock.startMicros + i * 1000L);
+      String content = "log-" + i + "-" + new String(new char[i % 50]).replace('\0', 'x');
+      long index = logBuffer.write(i % 3, i % 11, content).getIndex();
+      if (first == -1) {
+        first = index;
+      }
+    }
+    return first;
+  }
+
+  private void assertScanEqualsFind(Query query) {
+    List<String> expected = logBuffer.find(query).stream()
+      .map(log -> log.getIndex() + " " + log.getTimestamp() + " " + log.getRecordType() + " " + log.getKeyHash() + " " + log.getUtf8())
+      .collect(Collectors.toList());
+    List<String> scanned = new ArrayList<>();
+    logBuffer.scan(query, cursor -> {
+      assertThat(cursor.getLength(), is(cursor.getContent().length));
+      scanned.add(cursor.getIndex() + " " + cursor.getTimestamp() + " " + cursor.getRecordType() + " " + cursor.getKeyHash() + " " + cursor.getUtf8());
+    });
+    assertTrue(expected.size() > 0);
+    assertThat(scanned, is(expected));
+  }
+}
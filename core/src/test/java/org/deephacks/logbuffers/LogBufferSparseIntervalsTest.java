@@ -0,0 +1,114 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferSparseIntervalsTest {
+  static final long DAYS_30 = TimeUnit.DAYS.toMillis(30);
+  LogBuffer logBuffer;
+  String basePath;
+  long nowMs = System.currentTimeMillis() / 1000 * 1000 - 10_000;
+  long startMs = nowMs - DAYS_30;
+  FakeClock clock = new FakeClock(startMs * 1000);
+  long first;
+  long last;
+
+  @Before
+  public void before() throws IOException {
+    basePath = LogUtil.cleanupTmpDir();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .basePath(basePath).build();
+    // two seconds with logs a month apart
+    first = logBuffer.append("first");
+    clock.set(nowMs * 1000);
+    last = logBuffer.append("last");
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testJumpOverEmptyIntervals() throws Exception {
+    long start = System.nanoTime();
+    assertThat(utf8(Query.atLeastIndex(0)), is(asList("first", "last")));
+    assertThat(utf8(Query.atLeastIndex(first)), is(asList("first", "last")));
+    assertThat(utf8(Query.closedTime(startMs, nowMs + 999)), is(asList("first", "last")));
+    assertThat(utf8(Query.closedTime(startMs + 1000, nowMs + 999)), is(asList("last")));
+    assertThat(utf8(Query.closedTime(startMs, nowMs - 1)), is(asList("first")));
+    // stepping through 2.5 million empty seconds would take much longer
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test
+  public void testNewIntervalsFound() throws Exception {
+    assertThat(utf8(Query.atLeastIndex(0)).size(), is(2));
+    clock.set((nowMs + 2000) * 1000);
+    logBuffer.append("next");
+    assertThat(utf8(Query.atLeastIndex(0)), is(asList("first", "last", "next")));
+  }
+
+  @Test
+  public void testMissingIntervals() throws Exception {
+    RollingRanges ranges = RollingRanges.secondly();
+    long hole = ranges.startIndexForTime(startMs + DAYS_30 / 2);
+    assertFalse(logBuffer.getIndex(hole).isPresent());
+    assertFalse(logBuffer.getIndex(hole).isPresent());
+    assertThat(logBuffer.getIndex(last).get().getUtf8(), is("last"));
+    // a new reader without a manifest list the base path once
+    assertTrue(new File(basePath, Manifest.FILE_NAME).delete());
+    LogBuffer reader = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(basePath).build();
+    try {
+      List<String> logs = reader.find(Query.atLeastIndex(0)).stream().map(Log::getUtf8).collect(Collectors.toList());
+      assertThat(logs, is(asList("first", "last")));
+      assertFalse(reader.getIndex(hole).isPresent());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testNextIntervalFoundWhileListingIsThrottled() throws Exception {
+    File manifest = new File(basePath, Manifest.FILE_NAME);
+    assertTrue(manifest.delete());
+    LogBuffer reader = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(basePath).build();
+    try {
+      assertThat(find(reader, Query.atLeastIndex(0)), is(asList("first", "last")));
+      clock.set((nowMs + 1000) * 1000);
+      logBuffer.append("next");
+      manifest.delete();
+      // listed less than a second ago, the interval after the last is still checked
+      assertThat(find(reader, Query.atLeastIndex(0)), is(asList("first", "last", "next")));
+    } finally {
+      reader.close();
+    }
+  }
+
+  private static List<String> find(LogBuffer logBuffer, Query query) {
+    return logBuffer.find(query).stream().map(Log::getUtf8).collect(Collectors.toList());
+  }
+
+  private List<String> utf8(Query query) {
+    return logBuffer.find(query).stream().map(Log::getUtf8).collect(Collectors.toList());
+  }
+
+  private static List<String> asList(String... logs) {
+    return java.util.Arrays.asList(logs);
+  }
+}
@@ -0,0 +1,143 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferStatsTest {
+  LogBuffer logBuffer;
+  FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testStatsPerInterval() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 3, 100);
+    List<LogStats> stats = logBuffer.stats(Query.atLeastIndex(0));
+    assertThat(stats.size(), is(3));
+    for (int second = 0; second < 3; second++) {
+      LogStats interval = stats.get(second);
+      assertStats(interval, logBuffer.find(Query.closedTime(clock.startMs + second * 1000, clock.startMs + second * 1000 + 999)).toArrayList());
+      assertThat(interval.getInterval().start(), is(clock.startMs + second * 1000));
+    }
+    assertThat(LogStats.sum(stats).getCount(), is(300L));
+    assertStats(LogStats.sum(stats), logBuffer.find(Query.atLeastIndex(0)).toArrayList());
+  }
+
+  @Test
+  public void testStatsOfPartialQueries() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 3, 100);
+    Query time = Query.closedTime(clock.startMs + 505, clock.startMs + 2204);
+    List<LogStats> stats = logBuffer.stats(time);
+    assertThat(stats.size(), is(3));
+    assertThat(stats.get(0).getCount(), is(49L));
+    assertThat(stats.get(1).getCount(), is(100L));
+    assertThat(stats.get(2).getCount(), is(21L));
+    assertStats(LogStats.sum(stats), logBuffer.find(time).toArrayList());
+    assertThat(logBuffer.stats(time.reversed()).size(), is(3));
+
+    List<Log> logs = logBuffer.find(Query.atLeastIndex(0)).toArrayList();
+    Query index = Query.closedIndex(logs.get(10).getIndex(), logs.get(150).getIndex());
+    stats = logBuffer.stats(index);
+    assertThat(stats.size(), is(2));
+    assertStats(LogStats.sum(stats), logBuffer.find(index).toArrayList());
+
+    assertTrue(logBuffer.stats(Query.closedTime(clock.startMs - 5000, clock.startMs - 1)).isEmpty());
+  }
+
+  @Test
+  public void testStatsOfFilteredQueries() throws Exception {
+    for (int second = 0; second < 2; second++) {
+      for (int i = 0; i < 100; i++) {
+        clock.set(clock.startMicros + second * 1_000_000L + i * 10_000L);
+        logBuffer.write(i % 4, i, (i % 3 == 0 ? "fizz" : "buzz") + i);
+      }
+    }
+    Query type = Query.atLeastIndex(0).withRecordType(1);
+    assertStats(LogStats.sum(logBuffer.stats(type)), logBuffer.find(type).toArrayList());
+    assertThat(LogStats.sum(logBuffer.stats(type)).getCount(), is(50L));
+    Query content = Query.closedTime(clock.startMs, clock.startMs + 1499).withContentPrefix("fizz");
+    assertStats(LogStats.sum(logBuffer.stats(content)), logBuffer.find(content).toArrayList());
+    assertThat(LogStats.sum(logBuffer.stats(content)).getCount(), is(34L + 17L));
+    assertTrue(logBuffer.stats(Query.atLeastIndex(0).withRecordType(7)).isEmpty());
+  }
+
+  @Test
+  public void testSummaryExtendedWithNewLogs() throws Exception {
+    LogUtil.writeSeconds(logBuffer, clock, 1, 10);
+    List<LogStats> stats = logBuffer.stats(Query.atLeastIndex(0));
+    assertThat(stats.get(0).getCount(), is(10L));
+    for (int i = 0; i < 5; i++) {
+      clock.set(clock.startMicros + 500_000 + i);
+      logBuffer.write("more" + i);
+    }
+    stats = logBuffer.stats(Query.atLeastIndex(0));
+    assertThat(stats.size(), is(1));
+    assertStats(stats.get(0), logBuffer.find(Query.atLeastIndex(0)).toArrayList());
+    assertThat(stats.get(0).getCount(), is(15L));
+  }
+
+  @Test
+  public void testStatsOfStripes() throws Exception {
+    logBuffer.close();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .stripes(4)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    LogUtil.writeSeconds(logBuffer, clock, 2, 200);
+    List<LogStats> stats = logBuffer.stats(Query.atLeastIndex(0));
+    assertThat(stats.size(), is(2));
+    assertThat(stats.get(0).getCount(), is(200L));
+    assertThat(LogStats.sum(stats).getBytes(), is(bytes(logBuffer.find(Query.atLeastIndex(0)).toArrayList())));
+  }
+
+  @Test
+  public void testSum() {
+    LogStats first = new LogStats(Range.closed(0, 999), 2, 10, 0, 1, 5, 6);
+    LogStats second = new LogStats(Range.closed(1000, 1999), 3, 20, 1000, 1002, 1001, 1003);
+    LogStats sum = LogStats.sum(Arrays.asList(second, first));
+    assertThat(sum.getCount(), is(5L));
+    assertThat(sum.getBytes(), is(30L));
+    assertThat(sum.getFirstIndex(), is(0L));
+    assertThat(sum.getLastIndex(), is(1002L));
+    assertThat(sum.getFirstTimestamp(), is(5L));
+    assertThat(sum.getLastTimestamp(), is(1003L));
+    assertThat(sum.getInterval().start(), is(0L));
+    assertThat(sum.getInterval().stop(), is(1999L));
+    assertNull(LogStats.sum(new ArrayList<>()));
+  }
+
+  private static void assertStats(LogStats stats, List<Log> logs) {
+    assertNotNull(stats);
+    assertThat(stats.getCount(), is((long) logs.size()));
+    assertThat(stats.getBytes(), is(bytes(logs)));
+    List<Long> indexes = logs.stream().map(Log::getIndex).sorted().collect(Collectors.toList());
+    assertThat(stats.getFirstIndex(), is(indexes.get(0)));
+    assertThat(stats.getLastIndex(), is(indexes.get(indexes.size() - 1)));
+    assertThat(stats.getFirstTimestamp(), is(logs.get(0).getTimestamp()));
+    assertThat(stats.getLastTimestamp(), is(logs.get(logs.size() - 1).getTimestamp()));
+  }
+
+  private static long bytes(List<Log> logs) {
+    return logs.stream().mapToLong(log -> log.getContent().length).sum();
+  }
+}
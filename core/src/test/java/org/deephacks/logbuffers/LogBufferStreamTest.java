@@ -0,0 +1,203 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogBufferTest.TailLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferStreamTest {
+  LogBuffer logBuffer;
+  String basePath;
+
+  @Before
+  public void before() throws IOException {
+    this.basePath = LogUtil.cleanupTmpDir();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(basePath).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testSeparateIndexSpaces() throws Exception {
+    LogBuffer clicks = logBuffer.stream("clicks");
+    LogBuffer views = logBuffer.stream("views");
+    assertSame(clicks, logBuffer.stream("clicks"));
+    assertSame(views, clicks.stream("views"));
+    assertThat(logBuffer.getStreamNames(), is(new HashSet<>(Arrays.asList("clicks", "views"))));
+
+    Log click = clicks.write("click");
+    Log view = views.write("view");
+    Log root = logBuffer.write("root");
+
+    assertThat(contents(clicks, click.getIndex()), is(Arrays.asList("click")));
+    assertThat(contents(views, view.getIndex()), is(Arrays.asList("view")));
+    assertThat(contents(logBuffer, root.getIndex()), is(Arrays.asList("root")));
+  }
+
+  @Test
+  public void testReopen() throws Exception {
+    long index = logBuffer.stream("clicks").write("click").getIndex();
+    logBuffer.close();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(basePath).build();
+    assertThat(logBuffer.stream("clicks").getIndex(index).get().getUtf8(), is("click"));
+    assertThat(logBuffer.find(Query.atLeastIndex(0)).toLinkedList().size(), is(0));
+  }
+
+  @Test
+  public void testTailStream() throws Exception {
+    LogBuffer clicks = logBuffer.stream("clicks");
+    TailLog tail = new TailLog();
+    TailSchedule schedule = TailSchedule.builder(tail).build();
+    clicks.write("c1");
+    logBuffer.write("root");
+    clicks.write("c2");
+    clicks.forward(schedule);
+    assertThat(tail.logs.size(), is(2));
+    assertThat(tail.logs.get(1).getUtf8(), is("c2"));
+  }
+
+  @Test
+  public void testSharedWriteRing() throws Exception {
+    logBuffer.close();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .multiProducer(64)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    int numStreams = 4;
+    int numLogs = 1_000;
+    ExecutorService executor = Executors.newFixedThreadPool(numStreams);
+    List<Future<Long>> firstIndexes = new ArrayList<>();
+    for (int i = 0; i < numStreams; i++) {
+      LogBuffer stream = logBuffer.stream("s" + i);
+      String content = "s" + i;
+      firstIndexes.add(executor.submit(() -> {
+        long first = stream.append(content);
+        for (int j = 1; j < numLogs; j++) {
+          stream.append(content);
+        }
+        return first;
+      }));
+    }
+    for (int i = 0; i < numStreams; i++) {
+      long first = firstIndexes.get(i).get(1, TimeUnit.MINUTES);
+      List<String> contents = contents(logBuffer.stream("s" + i), first);
+      assertThat(contents.size(), is(numLogs));
+      assertThat(new HashSet<>(contents).size(), is(1));
+      assertThat(contents.get(0), is("s" + i));
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCloseStream() throws Exception {
+    LogBuffer clicks = logBuffer.stream("clicks");
+    long index = clicks.write("click").getIndex();
+    clicks.close();
+    assertThat(logBuffer.getStreamNames().size(), is(0));
+    assertThat(logBuffer.stream("clicks").getIndex(index).get().getUtf8(), is("click"));
+  }
+
+  @Test(timeout = 60_000)
+  public void testCloseStreamWhileWritingToSharedRing() throws Exception {
+    logBuffer.close();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .multiProducer(64)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    LogBuffer clicks = logBuffer.stream("clicks");
+    List<Long> written = Collections.synchronizedList(new ArrayList<>());
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    AtomicBoolean closing = new AtomicBoolean();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 4; i++) {
+      executor.submit(() -> {
+        try {
+          while (true) {
+            written.add(clicks.append("click"));
+          }
+        } catch (Throwable e) {
+          // only writes that race with closing the stream are expected to fail
+          if (!closing.get()) {
+            failures.add(e);
+          }
+        }
+        return null;
+      });
+    }
+    while (written.size() < 1_000 && failures.isEmpty()) {
+      Thread.sleep(1);
+    }
+    closing.set(true);
+    clicks.close();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    assertThat(failures.toString(), failures.isEmpty(), is(true));
+    LogBuffer reopened = logBuffer.stream("clicks");
+    for (long index : new ArrayList<>(written)) {
+      assertThat(reopened.getIndex(index).get().getUtf8(), is("click"));
+    }
+  }
+
+  @Test
+  public void testReaderCacheSharedByStreams() throws Exception {
+    logBuffer.close();
+    long startMicros = (System.currentTimeMillis() / 1000 - 10) * 1_000_000;
+    AtomicLong now = new AtomicLong(startMicros);
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .clock(now::get)
+      .readersMaxRollingFiles(2)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    List<LogBuffer> streams = Arrays.asList(logBuffer.stream("clicks"), logBuffer.stream("views"));
+    for (int second = 0; second < 3; second++) {
+      now.set(startMicros + second * 1_000_000L);
+      for (LogBuffer stream : streams) {
+        stream.write("log");
+      }
+    }
+    for (LogBuffer stream : streams) {
+      assertThat(stream.find(Query.atLeastIndex(0)).stream().count(), is(3L));
+    }
+    CacheStats stats = logBuffer.getReaderCacheStats();
+    assertTrue(stats.getOpen() <= 2);
+    // each stream opened three chronicles
+    assertTrue(stats.getMisses() >= 6);
+    assertTrue(streams.get(0).getReaderCacheStats().getMisses() >= 6);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidName() throws Exception {
+    logBuffer.stream("../clicks");
+  }
+
+  private static List<String> contents(LogBuffer buffer, long fromIndex) {
+    List<String> contents = new ArrayList<>();
+    for (Log log : buffer.find(Query.atLeastIndex(fromIndex)).toLinkedList()) {
+      contents.add(log.getUtf8());
+    }
+    return contents;
+  }
+}
@@ -0,0 +1,240 @@
+package org.deephacks.logbuffers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferStripedTest {
+  LogBuffer logBuffer;
+  int numThreads = 8;
+  int numLogsPerThread = 5_000;
+  String path;
+
+  @Before
+  public void before() throws IOException {
+    this.path = LogUtil.cleanupTmpDir();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .stripes(4)
+      .basePath(path).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testConcurrentWritersMergedRead() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    List<Log> written = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch latch = new CountDownLatch(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      executor.submit(() -> {
+        try {
+          for (int j = 0; j < numLogsPerThread; j++) {
+            written.add(logBuffer.write(LogUtil.randomLog()));
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+    latch.await();
+    executor.shutdown();
+    int numLogs = numThreads * numLogsPerThread;
+    Set<Long> indexes = written.stream().map(Log::getIndex).collect(Collectors.toSet());
+    assertThat(indexes.size(), is(numLogs));
+
+    // one stream ordered by timestamp then index
+    List<Log> read = logBuffer.find(Query.atLeastTime(0)).toArrayList();
+    assertThat(read.size(), is(numLogs));
+    for (int i = 1; i < read.size(); i++) {
+      Log previous = read.get(i - 1);
+      Log log = read.get(i);
+      assertTrue(previous.getTimestampMicros() < log.getTimestampMicros()
+        || (previous.getTimestampMicros() == log.getTimestampMicros() && previous.getIndex() < log.getIndex()));
+    }
+    assertThat(read.stream().map(Log::getIndex).collect(Collectors.toSet()), is(indexes));
+    assertThat(logBuffer.find(Query.atLeastIndex(0)).stream().count(), is((long) numLogs));
+    assertThat(logBuffer.parallel().stream().count(), is((long) numLogs));
+
+    for (Log log : written.subList(0, 100)) {
+      assertArrayEquals(logBuffer.getIndex(log.getIndex()).get().getContent(), log.getContent());
+    }
+  }
+
+  @Test
+  public void testTimeQuery() throws Exception {
+    Log first = logBuffer.write("1");
+    Thread.sleep(10);
+    Log second = logBuffer.write("2");
+    Thread.sleep(10);
+    logBuffer.write("3");
+    List<String> read = logBuffer.find(Query.closedTime(second.getTimestamp(), second.getTimestamp()))
+      .stream().map(Log::getUtf8).collect(Collectors.toList());
+    assertThat(read, is(Collections.singletonList("2")));
+    assertThat(logBuffer.find(Query.atLeastTime(first.getTimestamp())).stream().count(), is(3L));
+  }
+
+  @Test
+  public void testReaderWithoutStripes() throws Exception {
+    logBuffer.write("1");
+    logBuffer.write("2");
+    LogBuffer reader = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(path).build();
+    try {
+      assertThat(reader.find(Query.atLeastIndex(0)).stream().count(), is(2L));
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testThreadsGivenStripesRoundRobin() throws Exception {
+    Set<Integer> stripes = new HashSet<>();
+    for (int i = 0; i < 4; i++) {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      long index = executor.submit(() -> logBuffer.write("log").getIndex()).get();
+      executor.shutdown();
+      stripes.add(StripedDir.stripeOf(RollingRanges.secondly(), index, 4));
+    }
+    assertThat(stripes, is(new HashSet<>(Arrays.asList(0, 1, 2, 3))));
+  }
+
+  @Test
+  public void testTail() throws Exception {
+    logBuffer.close();
+    long start = System.currentTimeMillis() * 1000;
+    AtomicLong now = new AtomicLong(start);
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .stripes(4)
+      .clock(now::get)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    ExecutorService first = Executors.newSingleThreadExecutor();
+    ExecutorService second = Executors.newSingleThreadExecutor();
+    try {
+      now.set(start + 100);
+      long a1 = first.submit(() -> logBuffer.write("a1").getIndex()).get();
+      now.set(start + 300);
+      long b1 = second.submit(() -> logBuffer.write("b1").getIndex()).get();
+      LogBufferTest.TailLog tail = new LogBufferTest.TailLog();
+      TailSchedule schedule = TailSchedule.builder(tail).build();
+      logBuffer.forward(schedule);
+      assertThat(indexes(tail.logs), is(Arrays.asList(a1, b1)));
+
+      // written after b1 but with an earlier timestamp, only the stripe position know it is unseen
+      now.set(start + 200);
+      long a2 = first.submit(() -> logBuffer.write("a2").getIndex()).get();
+      now.set(start + 400);
+      long b2 = second.submit(() -> logBuffer.write("b2").getIndex()).get();
+      logBuffer.forward(schedule);
+      assertThat(indexes(tail.logs), is(Arrays.asList(a1, b1, a2, b2)));
+
+      logBuffer.forward(schedule);
+      assertThat(tail.logs.size(), is(4));
+    } finally {
+      first.shutdown();
+      second.shutdown();
+    }
+  }
+
+  @Test
+  public void testDurableIndex() throws Exception {
+    logBuffer.close();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .stripes(4)
+      .durability(Durability.perWrite())
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    assertThat(logBuffer.getDurableIndex(), is(-1L));
+    List<Long> written = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      written.add(executor.submit(() -> logBuffer.append("log")).get());
+      executor.shutdown();
+    }
+    // the lowest durable index of the stripes
+    assertThat(logBuffer.getDurableIndex(), is(Collections.min(written)));
+
+    LogBufferTest.TailLog tail = new LogBufferTest.TailLog();
+    logBuffer.forward(TailSchedule.builder(tail).durableOnly(true).build());
+    assertThat(new HashSet<>(indexes(tail.logs)), is(new HashSet<>(written)));
+  }
+
+  @Test
+  public void testTailAdvanceStripesNeverWritten() throws Exception {
+    logBuffer.close();
+    long start = (System.currentTimeMillis() / 1000 - 10) * 1_000_000;
+    AtomicLong now = new AtomicLong(start);
+    String basePath = LogUtil.cleanupTmpDir();
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .stripes(4)
+      .clock(now::get)
+      .basePath(basePath).build();
+    LogBufferTest.TailLog tail = new LogBufferTest.TailLog();
+    TailSchedule schedule = TailSchedule.builder(tail).build();
+    logBuffer.write("1");
+    logBuffer.forward(schedule);
+    now.set(start + 5_000_000);
+    Log last = logBuffer.write("2");
+    logBuffer.forward(schedule);
+    assertThat(tail.logs.size(), is(2));
+
+    // stripes without logs move up to the interval scanned last
+    RollingRanges ranges = RollingRanges.secondly();
+    String tailId = basePath + "/" + LogBufferTest.TailLog.class.getName();
+    for (int stripe = 1; stripe < 4; stripe++) {
+      long[] seen = Index.binaryIndex(StripedDir.chronicleName(tailId, stripe, 4)).getLastSeen();
+      assertThat(seen[0], is(ranges.startTimeForIndex(last.getIndex())));
+      assertThat(seen[1], is(-1L));
+    }
+  }
+
+  @Test
+  public void testDurableOnlyTailOfLogsWrittenByAnotherProcess() throws Exception {
+    ExecutorService first = Executors.newSingleThreadExecutor();
+    ExecutorService second = Executors.newSingleThreadExecutor();
+    first.submit(() -> logBuffer.write("a")).get();
+    long b = second.submit(() -> logBuffer.write("b").getIndex()).get();
+    first.shutdown();
+    second.shutdown();
+    logBuffer.close();
+
+    logBuffer = LogBuffer.newBuilder()
+      .secondly()
+      .stripes(4)
+      .durability(Durability.records(1000))
+      .basePath(path).build();
+    // not yet forced, withhold logs of the stripe written here
+    logBuffer.write("c");
+    LogBufferTest.TailLog tail = new LogBufferTest.TailLog();
+    logBuffer.forward(TailSchedule.builder(tail).durableOnly(true).build());
+    assertThat(indexes(tail.logs), is(Collections.singletonList(b)));
+  }
+
+  private static List<Long> indexes(List<Log> logs) {
+    return logs.stream().map(Log::getIndex).collect(Collectors.toList());
+  }
+}
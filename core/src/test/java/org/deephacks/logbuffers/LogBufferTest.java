@@ -1,15 +1,19 @@
 package org.deephacks.logbuffers;
 
 
+import org.deephacks.vals.DirectBuffer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.counting;
@@ -72,6 +76,179 @@ public class LogBufferTest {
     assertEquals(select.get(0).getIndex(), log2.getIndex());
   }
 
+  @Test
+  public void testWriteBatch() throws Exception {
+    List<byte[]> batch = Arrays.asList(c1, c2, c3);
+    Range range = logBuffer.writeBatch(batch);
+    LinkedList<Log> select = logBuffer.find(Query.closedIndex(range.start(), range.stop())).toLinkedList();
+    assertThat(select.size(), is(3));
+    assertThat(select.getFirst().getIndex(), is(range.start()));
+    assertThat(select.getLast().getIndex(), is(range.stop()));
+    for (int i = 0; i < batch.size(); i++) {
+      assertArrayEquals(batch.get(i), select.get(i).getContent());
+    }
+
+    // next batch continue after the previous
+    List<PageView> views = Arrays.asList(
+      new PageViewBuilder().withUrl("www.google.com").withUserId(1L).build(),
+      new PageViewBuilder().withUrl("www.yahoo.com").withUserId(2L).build());
+    Range next = logBuffer.writeBatch(views);
+    assertTrue(next.start() > range.stop());
+    List<PageView> read = logBuffer.find(Query.closedIndex(next.start(), next.stop()))
+      .stream(PageViewBuilder::parseFrom).collect(Collectors.toList());
+    assertThat(read, is(views));
+  }
+
+  @Test
+  public void testWriteBatchPartiallyAppended() throws Exception {
+    try {
+      logBuffer.writeBatch(Arrays.asList(c1, c2, null));
+      fail("batch with a null log should fail");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+      List<Log> appended = logBuffer.find(Query.atLeastIndex(0)).toArrayList();
+      assertThat(appended.size(), is(2));
+      assertThat(e.getMessage(), is("Batch failed after appending indexes "
+        + appended.get(0).getIndex() + " to " + appended.get(1).getIndex()));
+    }
+  }
+
+  @Test
+  public void testAppendBuffers() throws Exception {
+    ByteBuffer direct = ByteBuffer.allocateDirect(64);
+    direct.put(new byte[] {9, 9}).put(c1).flip().position(2);
+    long i1 = logBuffer.append(direct);
+    assertThat(direct.position(), is(2));
+
+    ByteBuffer heap = ByteBuffer.allocate(64);
+    heap.put(c2).flip();
+    long i2 = logBuffer.append(heap);
+    long i3 = logBuffer.append(ByteBuffer.wrap(c3).asReadOnlyBuffer());
+
+    ByteBuffer offHeap = ByteBuffer.allocateDirect(c4.length + 10);
+    offHeap.position(10);
+    offHeap.put(c4);
+    long i4 = logBuffer.append(new DirectBuffer(offHeap), 10, c4.length);
+
+    assertArrayEquals(logBuffer.getIndex(i1).get().getContent(), c1);
+    assertArrayEquals(logBuffer.getIndex(i2).get().getContent(), c2);
+    assertArrayEquals(logBuffer.getIndex(i3).get().getContent(), c3);
+    assertArrayEquals(logBuffer.getIndex(i4).get().getContent(), c4);
+  }
+
+  @Test
+  public void testWriteAsync() throws Exception {
+    List<CompletableFuture<Long>> futures = new ArrayList<>();
+    futures.add(logBuffer.writeAsync(c1));
+    futures.add(logBuffer.writeAsync(new String(c2)));
+    futures.add(logBuffer.writeAsync(c3));
+    List<byte[]> expected = Arrays.asList(c1, c2, c3);
+    for (int i = 0; i < futures.size(); i++) {
+      long index = futures.get(i).get(10, TimeUnit.SECONDS);
+      assertArrayEquals(logBuffer.getIndex(index).get().getContent(), expected.get(i));
+    }
+  }
+
+  @Test
+  public void testClockNeverGoesBackwards() throws Exception {
+    long base = System.currentTimeMillis() * 1000;
+    // first reading open the appender
+    Iterator<Long> readings = Arrays.asList(base, base + 123, base - 1000, base + 500).iterator();
+    LogBuffer buffer = LogBuffer.newBuilder()
+      .secondly()
+      .clock(readings::next)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    try {
+      Log l1 = buffer.write(c1);
+      long i2 = buffer.append(c2);
+      Log l3 = buffer.write(c3);
+      assertThat(l1.getTimestampMicros(), is(base + 123));
+      assertThat(buffer.getIndex(i2).get().getTimestampMicros(), is(base + 123));
+      assertThat(buffer.getIndex(l3.getIndex()).get().getTimestampMicros(), is(base + 500));
+      assertThat(buffer.getIndex(l3.getIndex()).get().getTimestamp(), is(base / 1000));
+    } finally {
+      buffer.close();
+    }
+  }
+
+  @Test
+  public void testClockNeverGoesBackwardsAfterReopen() throws Exception {
+    long base = (System.currentTimeMillis() / 1000 - 10) * 1_000_000;
+    AtomicLong now = new AtomicLong(base + 500_000);
+    String path = LogUtil.cleanupTmpDir();
+    LogBuffer buffer = LogBuffer.newBuilder().secondly().clock(now::get).basePath(path).build();
+    long first = buffer.write(c1).getTimestampMicros();
+    buffer.close();
+    now.set(base + 100_000);
+    buffer = LogBuffer.newBuilder().secondly().clock(now::get).basePath(path).build();
+    try {
+      Log log = buffer.write(c2);
+      assertThat(log.getTimestampMicros(), is(first));
+    } finally {
+      buffer.close();
+    }
+  }
+
+  @Test
+  public void testWriteIndexWhenClockGoesBackwards() throws Exception {
+    LogUtil.FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+    LogBuffer buffer = LogUtil.fakeClockBuilder(clock).basePath(LogUtil.cleanupTmpDir()).build();
+    try {
+      clock.set(clock.startMicros + 1_000_000);
+      buffer.append(c1);
+      clock.set(clock.startMicros);
+      long writeIndex = buffer.getWriteIndex();
+      assertThat(buffer.append(c2), is(writeIndex));
+    } finally {
+      buffer.close();
+    }
+  }
+
+  @Test
+  public void testCoarseClocksShareOneThread() throws Exception {
+    List<Clock> clocks = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      clocks.add(Clock.coarse(i + 1, TimeUnit.MILLISECONDS));
+    }
+    long threads = Thread.getAllStackTraces().keySet().stream()
+      .filter(t -> t.getName().equals("logbuffer-clock")).count();
+    assertThat(threads, is(1L));
+    long start = clocks.get(9).currentTimeMicros();
+    Thread.sleep(50);
+    for (Clock clock : clocks) {
+      assertTrue(clock.currentTimeMicros() > start);
+    }
+  }
+
+  @Test
+  public void testTypedRecords() throws Exception {
+    long first = logBuffer.write(c1).getIndex();
+    Log l2 = logBuffer.write(1, 42, c2);
+    Log l3 = logBuffer.write(2, 42, c3);
+    Log l4 = logBuffer.write(1, 7, c4);
+    assertThat(l2.getRecordType(), is(1));
+    assertThat(l2.getKeyHash(), is(42));
+    assertThat(logBuffer.getIndex(l4.getIndex()).get().getRecordType(), is(1));
+    assertThat(logBuffer.getIndex(l4.getIndex()).get().getKeyHash(), is(7));
+    assertThat(logBuffer.getIndex(first).get().getRecordType(), is(0));
+
+    List<Log> type1 = logBuffer.find(Query.atLeastIndex(first).withRecordType(1)).toLinkedList();
+    assertThat(type1.size(), is(2));
+    assertArrayEquals(type1.get(0).getContent(), c2);
+    assertArrayEquals(type1.get(1).getContent(), c4);
+
+    List<Log> key42 = logBuffer.find(Query.closedTime(0, System.currentTimeMillis()).withKeyHash(42)).toLinkedList();
+    assertThat(key42.size(), is(2));
+    assertThat(key42.get(1).getIndex(), is(l3.getIndex()));
+
+    List<Log> both = logBuffer.find(Query.atLeastIndex(first).withRecordType(1).withKeyHash(7)).toLinkedList();
+    assertThat(both.size(), is(1));
+    assertThat(both.get(0).getIndex(), is(l4.getIndex()));
+
+    assertThat(logBuffer.find(Query.closedIndex(first, l3.getIndex()).withRecordType(1)).toLinkedList().size(), is(1));
+    assertThat(logBuffer.find(Query.atLeastIndex(first).withRecordType(3)).toLinkedList().size(), is(0));
+  }
+
   @Test
   public void testWriteReadPeriod() throws Exception {
     long t1 = timestamp();
@@ -247,7 +424,7 @@ public class LogBufferTest {
   @Test
   public void testSepecificRangeDirectory() throws Exception {
     Log log1 = logBuffer.write(c1);
-    String time = RollingRanges.SECOND_FORMAT.format(new Date(log1.getTimestamp()));
+    String time = RollingRanges.SECOND_FORMAT.get().format(new Date(log1.getTimestamp()));
     LogBuffer buffer = LogBuffer.newBuilder().basePath("/tmp/logBufferTest/" + time).build();
     LinkedList<Log> logs = buffer.find(Query.atLeastIndex(0)).toLinkedList();
     assertThat(logs.size(), is(1));
@@ -0,0 +1,126 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.deephacks.logbuffers.Dirs.Dir;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogBufferTimeIndexTest {
+  LogBuffer logBuffer;
+  String basePath;
+  FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    this.basePath = LogUtil.cleanupTmpDir();
+    logBuffer = newLogBuffer();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testEntries() throws Exception {
+    // 10 logs per milli within a single second
+    List<Long> timestamps = write(0, 5000, 100);
+    assertThat(timeIndexFile().length(), is(5L * TimeIndex.ENTRY_SIZE));
+    assertSeek(timestamps);
+  }
+
+  @Test
+  public void testEntryPerSecond() throws Exception {
+    logBuffer.close();
+    clock = LogUtil.fakeClock(2, TimeUnit.MINUTES);
+    logBuffer = LogBuffer.newBuilder()
+      .minutely()
+      .clock(clock)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    // 4 logs per second, a new second always get an entry
+    List<Long> timestamps = write(0, 40, 250_000);
+    assertThat(timeIndexFile().length(), is(10L * TimeIndex.ENTRY_SIZE));
+    assertSeek(timestamps);
+  }
+
+  @Test
+  public void testReopen() throws Exception {
+    List<Long> timestamps = write(0, 3000, 100);
+    logBuffer.close();
+    logBuffer = newLogBuffer();
+    timestamps.addAll(write(3000, 3000, 100));
+    assertThat(timeIndexFile().length(), is(6L * TimeIndex.ENTRY_SIZE));
+    assertSeek(timestamps);
+  }
+
+  @Test
+  public void testWithoutTimeIndex() throws Exception {
+    List<Long> timestamps = write(0, 3000, 100);
+    logBuffer.close();
+    assertTrue(timeIndexFile().delete());
+    logBuffer = newLogBuffer();
+    timestamps.addAll(write(3000, 3000, 100));
+    // chronicles written without an index are not given a partial one
+    assertFalse(timeIndexFile().exists());
+    assertSeek(timestamps, false);
+  }
+
+  private LogBuffer newLogBuffer() throws IOException {
+    return LogUtil.fakeClockBuilder(clock)
+      .basePath(basePath).build();
+  }
+
+  private List<Long> write(int from, int numLogs, long stepMicros) throws IOException {
+    List<Long> timestamps = new ArrayList<>();
+    for (int i = from; i < from + numLogs; i++) {
+      clock.set(clock.startMicros + i * stepMicros);
+      timestamps.add(logBuffer.write(Integer.toString(i)).getTimestamp());
+    }
+    return timestamps;
+  }
+
+  private File timeIndexFile() {
+    File interval = logBuffer.getBasePath().listFiles(File::isDirectory)[0];
+    return new File(interval, interval.getName() + TimeIndex.SUFFIX);
+  }
+
+  /**
+   * Seeks must find the first log at or after a time, like a linear scan.
+   */
+  private void assertSeek(List<Long> timestamps) {
+    assertSeek(timestamps, true);
+  }
+
+  /**
+   * @param exact false if seeks may start before the first log at or after a time.
+   */
+  private void assertSeek(List<Long> timestamps, boolean exact) {
+    Dir dir = logBuffer.initalizeDirs().iterator().next();
+    long first = dir.getIndexRange().start();
+    for (long time = clock.startMs - 1; time <= timestamps.get(timestamps.size() - 1) + 1; time += 7) {
+      long expected = first;
+      while (expected - first < timestamps.size() && timestamps.get((int) (expected - first)) < time) {
+        expected++;
+      }
+      long index = Dirs.findFirstIndex(dir, Query.atLeastTime(time));
+      if (exact) {
+        assertThat(index, is(expected));
+      } else {
+        assertTrue(index <= expected);
+      }
+      long start = time;
+      long expectedCount = timestamps.stream().filter(t -> t >= start && t <= start + 5).count();
+      assertThat(logBuffer.find(Query.closedTime(time, time + 5)).stream().count(), is(expectedCount));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package org.deephacks.logbuffers;
+
+import org.deephacks.logbuffers.LogUtil.FakeClock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class LogSpliteratorTest {
+  LogBuffer logBuffer;
+  FakeClock clock = LogUtil.fakeClock(10, TimeUnit.SECONDS);
+
+  @Before
+  public void before() throws IOException {
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+  }
+
+  @After
+  public void after() throws IOException {
+    logBuffer.close();
+  }
+
+  @Test
+  public void testSplitSingleInterval() throws Exception {
+    int numLogs = 50_000;
+    long first = logBuffer.append(Integer.toString(0));
+    for (int i = 1; i < numLogs; i++) {
+      logBuffer.append(Integer.toString(i));
+    }
+    Query query = Query.atLeastIndex(0);
+    logBuffer.initalizeDirs();
+    Spliterator<Log> spliterator = new LogSpliterator(logBuffer.dirs, query);
+    long size = spliterator.estimateSize();
+    assertTrue(size >= numLogs);
+    Spliterator<Log> prefix = spliterator.trySplit();
+    assertNotNull(prefix);
+    assertThat(prefix.estimateSize() + spliterator.estimateSize(), is(size));
+    assertThat(count(prefix) + count(spliterator), is((long) numLogs));
+
+    assertParallelEqualsSequential(query);
+    assertParallelEqualsSequential(Query.closedIndex(first + 100, first + 40_000));
+    assertParallelEqualsSequential(Query.closedTime(clock.startMs, clock.startMs + 1000));
+  }
+
+  @Test
+  public void testSplitManyIntervals() throws Exception {
+    for (int second = 0; second < 4; second++) {
+      clock.set(clock.startMicros + second * 1_000_000L);
+      for (int i = 0; i < 5_000; i++) {
+        logBuffer.append(second + "-" + i);
+      }
+    }
+    assertParallelEqualsSequential(Query.atLeastIndex(0));
+    assertParallelEqualsSequential(Query.closedTime(clock.startMs + 1000, clock.startMs + 2999));
+    assertThat(logBuffer.find(Query.closedTime(clock.startMs + 1000, clock.startMs + 2999))
+      .stream().parallel().count(), is(10_000L));
+  }
+
+  @Test
+  public void testParallelUseManyThreads() throws Exception {
+    if (Runtime.getRuntime().availableProcessors() < 2) {
+      return;
+    }
+    for (int i = 0; i < 200_000; i++) {
+      logBuffer.append(Integer.toString(i));
+    }
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    long count = logBuffer.find(Query.atLeastIndex(0)).stream().parallel()
+      .peek(log -> threads.add(Thread.currentThread().getName()))
+      .count();
+    assertThat(count, is(200_000L));
+    assertTrue(threads.size() > 1);
+  }
+
+  @Test
+  public void testFindParallelOnPool() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(3);
+    logBuffer.close();
+    logBuffer = LogUtil.fakeClockBuilder(clock)
+      .forkJoinPool(pool)
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    try {
+      // 10 logs per milli over 3 intervals
+      for (int second = 0; second < 3; second++) {
+        for (int i = 0; i < 10_000; i++) {
+          clock.set(clock.startMicros + second * 1_000_000L + i * 100);
+          logBuffer.append(second + "-" + i);
+        }
+      }
+          Query query = Query.closedTime(clock.startMs + 500, clock.startMs + 2249);
+      Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+      List<String> parallel = logBuffer.findParallel(query, logs -> logs
+        .peek(log -> pools.add(ForkJoinTask.getPool()))
+        .map(Log::getUtf8)
+        .collect(Collectors.toList()));
+      assertThat(parallel.size(), is(5_000 + 10_000 + 2_500));
+      assertThat(parallel.get(0), is("0-5000"));
+      assertThat(parallel.get(parallel.size() - 1), is("2-2499"));
+      assertThat(parallel, is(logBuffer.find(query).stream().map(Log::getUtf8).collect(Collectors.toList())));
+      assertThat(pools, is(Collections.singleton(pool)));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private void assertParallelEqualsSequential(Query query) {
+    List<String> sequential = logBuffer.find(query).stream()
+      .map(Log::getUtf8)
+      .collect(Collectors.toList());
+    List<String> parallel = logBuffer.find(query).stream().parallel()
+      .map(Log::getUtf8)
+      .collect(Collectors.toList());
+    assertTrue(sequential.size() > 0);
+    assertThat(parallel, is(sequential));
+  }
+
+  private static long count(Spliterator<Log> spliterator) {
+    long[] count = new long[1];
+    spliterator.forEachRemaining(log -> count[0]++);
+    return count[0];
+  }
+}
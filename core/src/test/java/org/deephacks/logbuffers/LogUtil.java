@@ -92,6 +92,10 @@ public class LogUtil extends Dirs {
   void initialize() {
   }
 
+  @Override
+  void refresh() {
+  }
+
   public static class DirStub extends Dir {
     DirStub(File basePath, RollingRanges ranges) {
       super(basePath, ranges, null);
@@ -108,6 +112,57 @@ public class LogUtil extends Dirs {
     }
   }
 
+  /**
+   * Clock that start at the beginning of a unit in the past, so that logs span a
+   * known number of intervals, and only move when set by the test.
+   */
+  public static FakeClock fakeClock(long ago, TimeUnit unit) {
+    long unitMicros = unit.toMicros(1);
+    return new FakeClock((System.currentTimeMillis() * 1000 / unitMicros - ago) * unitMicros);
+  }
+
+  /**
+   * Builder of a secondly log buffer that take its timestamps from the clock.
+   */
+  public static LogBuffer.Builder fakeClockBuilder(FakeClock clock) {
+    return LogBuffer.newBuilder()
+      .secondly()
+      .clock(clock);
+  }
+
+  /**
+   * Write logs evenly spread over a number of seconds from the start of the clock.
+   */
+  public static void writeSeconds(LogBuffer logBuffer, FakeClock clock, int seconds, int logsPerSecond) throws IOException {
+    for (int second = 0; second < seconds; second++) {
+      for (int i = 0; i < logsPerSecond; i++) {
+        clock.set(clock.startMicros + second * 1_000_000L + i * (1_000_000L / logsPerSecond));
+        logBuffer.write(second + "-" + i);
+      }
+    }
+  }
+
+  public static class FakeClock implements Clock {
+    public final long startMicros;
+    public final long startMs;
+    private final AtomicLong now;
+
+    public FakeClock(long startMicros) {
+      this.startMicros = startMicros;
+      this.startMs = startMicros / 1000;
+      this.now = new AtomicLong(startMicros);
+    }
+
+    @Override
+    public long currentTimeMicros() {
+      return now.get();
+    }
+
+    public void set(long micros) {
+      now.set(micros);
+    }
+  }
+
   public static byte[] randomLog() {
     return UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
   }
@@ -0,0 +1,60 @@
+package org.deephacks.logbuffers;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manual benchmark that measure write latency of a secondly buffer, such that
+ * writes cross many interval boundaries, and report latency percentiles along
+ * with the latency of the first write of each interval.
+ *
+ * Usage: RollingLatencyBenchmark [seconds] [writesPerSecond]
+ */
+public class RollingLatencyBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    int writesPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+    byte[] content = LogUtil.randomLog();
+    LogBuffer buffer = LogBuffer.newBuilder()
+      .secondly()
+      .basePath(LogUtil.cleanupTmpDir()).build();
+    // warm up appender and jit
+    for (int i = 0; i < 100_000; i++) {
+      buffer.append(content);
+    }
+    long[] latencies = new long[seconds * writesPerSecond];
+    long[] rolls = new long[seconds + 1];
+    int numRolls = 0;
+    long second = System.currentTimeMillis() / 1000;
+    long periodNanos = TimeUnit.SECONDS.toNanos(1) / writesPerSecond;
+    long next = System.nanoTime();
+    for (int i = 0; i < latencies.length; i++) {
+      while (System.nanoTime() < next) {
+        // pace writes evenly across the interval
+      }
+      long now = System.currentTimeMillis() / 1000;
+      long start = System.nanoTime();
+      buffer.append(content);
+      latencies[i] = System.nanoTime() - start;
+      if (now != second && numRolls < rolls.length) {
+        rolls[numRolls++] = latencies[i];
+        second = now;
+      }
+      next += periodNanos;
+    }
+    buffer.close();
+    Arrays.sort(latencies);
+    System.out.println(String.format("writes %,d p50 %,dns p99 %,dns p99.9 %,dns p99.99 %,dns max %,dns",
+      latencies.length, percentile(latencies, 50), percentile(latencies, 99), percentile(latencies, 99.9),
+      percentile(latencies, 99.99), latencies[latencies.length - 1]));
+    long[] rolled = Arrays.copyOf(rolls, numRolls);
+    Arrays.sort(rolled);
+    System.out.println(String.format("rolls %d avg %,dns max %,dns",
+      numRolls, Arrays.stream(rolled).sum() / Math.max(1, numRolls), numRolls > 0 ? rolled[numRolls - 1] : 0));
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    return sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+  }
+}
@@ -2,6 +2,11 @@ package org.deephacks.logbuffers;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.core.Is.is;
@@ -102,4 +107,32 @@ public class RollingRangesTest {
     assertThat(range.startTimeFormatForIndex(index[1]), is(format2));
   }
 
+  @Test
+  public void testFormatAndParseFromManyThreads() throws Exception {
+    RollingRanges range = RollingRanges.secondly();
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final long offset = i * 1000L;
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < 10000; j++) {
+            long time = offset + j * threads * 1000L;
+            long index = range.startIndexForTime(time);
+            String name = range.startTimeFormatForIndex(index);
+            assertThat(RollingRanges.tryCreate(name).getInterval(), is(range.getInterval()));
+            assertThat(range.timeRange(name).start(), is(time));
+            assertThat(range.indexRange(name).start(), is(index));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -43,6 +43,24 @@ public class RollingTest {
     assertThat(selected.size(), is(written.size()));
   }
 
+  @Test
+  public void testRollIntoPreparedAndSkippedIntervals() throws Exception {
+    List<Log> written = new LinkedList<>();
+    // cross a few boundaries where the next interval have been prepared
+    for (int i = 0; i < 50; i++) {
+      written.add(logBuffer.write(LogUtil.randomLog()));
+      Thread.sleep(50);
+    }
+    // let prepared intervals pass without writes
+    Thread.sleep(2500);
+    written.add(logBuffer.write(LogUtil.randomLog()));
+    LinkedList<Log> selected = logBuffer.find(Query.atLeastIndex(0)).toLinkedList();
+    assertThat(selected.size(), is(written.size()));
+    for (int j = 0; j < written.size(); j++) {
+      assertThat(selected.get(j), is(written.get(j)));
+    }
+  }
+
   @Test
   public void testFindIndexRolloverWithBigMargins() throws Exception {
     LinkedList<Log> written = LogUtil.write(logBuffer);
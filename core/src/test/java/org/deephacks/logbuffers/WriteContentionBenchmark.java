@@ -0,0 +1,61 @@
+package org.deephacks.logbuffers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manual benchmark that compare the synchronized write path against the
+ * multi-producer ring and striped appenders with an increasing number of
+ * contending writer threads.
+ *
+ * Usage: WriteContentionBenchmark [logsPerThread]
+ */
+public class WriteContentionBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int logsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    byte[] content = LogUtil.randomLog();
+    for (int threads : new int[] {1, 2, 4, 8, 16, 32}) {
+      long sync = run(LogBuffer.newBuilder(), threads, logsPerThread, content);
+      long ring = run(LogBuffer.newBuilder().multiProducer(4096), threads, logsPerThread, content);
+      long striped = run(LogBuffer.newBuilder().stripes(threads), threads, logsPerThread, content);
+      System.out.println(String.format("threads %2d synchronized %,12d logs/s multiProducer %,12d logs/s stripes %,12d logs/s",
+        threads, sync, ring, striped));
+    }
+  }
+
+  private static long run(LogBuffer.Builder builder, int threads, int logsPerThread, byte[] content) throws Exception {
+    String path = LogUtil.cleanupTmpDir();
+    LogBuffer buffer = builder.hourly().basePath(path).build();
+    // warm up appender and jit
+    for (int i = 0; i < 100_000; i++) {
+      buffer.write(content);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      executor.submit(() -> {
+        try {
+          start.await();
+          for (int j = 0; j < logsPerThread; j++) {
+            buffer.write(content);
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+    Stopwatch stopwatch = new Stopwatch().start();
+    start.countDown();
+    done.await();
+    long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+    executor.shutdown();
+    buffer.close();
+    return (long) threads * logsPerThread * TimeUnit.SECONDS.toNanos(1) / elapsed;
+  }
+}